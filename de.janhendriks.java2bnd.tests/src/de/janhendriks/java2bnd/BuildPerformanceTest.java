@@ -0,0 +1,110 @@
+package de.janhendriks.java2bnd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IncrementalProjectBuilder;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Headless performance regression test of the {@link Builder}, run as JUnit plug-in test. It generates a temporary bnd
+ * workspace with synthetic Java2bnd projects and asserts latency and throughput budgets of full, incremental and no-op
+ * builds. Size and budgets are configurable by system properties, e.g. {@code -Djava2bnd.perf.projects=200
+ * -Djava2bnd.perf.classes=2000} for a large-scale run; the defaults keep the test fast enough for every build.
+ */
+public final class BuildPerformanceTest {
+
+	private static final int PROJECTS = Integer.getInteger("java2bnd.perf.projects", 10);
+	private static final int CLASSES = Integer.getInteger("java2bnd.perf.classes", 200);
+	private static final long FULL_BUILD_BUDGET_MILLIS = Long.getLong("java2bnd.perf.budget.full", 120_000L);
+	private static final long INCREMENTAL_BUILD_BUDGET_MILLIS = Long.getLong("java2bnd.perf.budget.incremental", 10_000L);
+	private static final long NO_OP_BUILD_BUDGET_MILLIS = Long.getLong("java2bnd.perf.budget.noop", 2_000L);
+	// Minimum throughput of a full build, in generated classes compiled and exported per second
+	private static final long MIN_CLASSES_PER_SECOND = Long.getLong("java2bnd.perf.throughput", 100L);
+	// Coarse file systems only keep the modification time in seconds
+	private static final long FILE_TIME_RESOLUTION_MILLIS = 1_100L;
+
+	private static TestWorkspace workspace;
+
+	@BeforeClass
+	public static void createWorkspace() throws Exception {
+		workspace = new TestWorkspace();
+		for (int i = 0; i < PROJECTS; i++) {
+			workspace.createJavaToBndProject(String.format("perf.project%03d", i), CLASSES);
+		}
+	}
+
+	@AfterClass
+	public static void deleteWorkspace() throws Exception {
+		if (workspace != null) {
+			workspace.close();
+		}
+	}
+
+	@Before
+	public void buildAll() throws Exception {
+		// Every test starts from a fully built and deployed workspace
+		workspace.build(IncrementalProjectBuilder.FULL_BUILD);
+	}
+
+	@Test
+	public void fullBuildDeploysEveryProjectWithinBudget() throws Exception {
+		workspace.build(IncrementalProjectBuilder.CLEAN_BUILD);
+		final long millis = workspace.build(IncrementalProjectBuilder.FULL_BUILD);
+
+		assertEquals("Every project must be deployed into the Local repository", PROJECTS, workspace.getLocalRepositoryJars().size());
+		assertWithinBudget("Full build", millis, FULL_BUILD_BUDGET_MILLIS);
+		final long classesPerSecond = PROJECTS * CLASSES * 1000L / Math.max(millis, 1L);
+		assertTrue(String.format("Full build throughput of %d classes/s is below %d classes/s", classesPerSecond, MIN_CLASSES_PER_SECOND),
+				classesPerSecond >= MIN_CLASSES_PER_SECOND);
+	}
+
+	@Test
+	public void incrementalBuildDoesNotExportWithinBudget() throws Exception {
+		final Map<Path, FileTime> jarsBefore = workspace.getLocalRepositoryJars();
+		Thread.sleep(FILE_TIME_RESOLUTION_MILLIS);
+		final IProject changedProject = workspace.getProjects().get(0);
+		workspace.writeClass(changedProject, changedProject.getName() + ".pkg0", "Class0", "\n\tpublic int changed() {\n\t\treturn 1;\n\t}\n");
+		final long millis = workspace.build(IncrementalProjectBuilder.INCREMENTAL_BUILD);
+
+		// Incremental builds only update the live bundle, deployment into Local happens on full builds
+		assertEquals("An incremental build must not re-export any bundle", jarsBefore, workspace.getLocalRepositoryJars());
+		assertWithinBudget("Incremental build", millis, INCREMENTAL_BUILD_BUDGET_MILLIS);
+	}
+
+	@Test
+	public void noOpBuildDoesNotExportWithinBudget() throws Exception {
+		// A full build always runs the builder, with skip_if_unchanged it has nothing to do for unchanged projects
+		for (final IProject project : workspace.getProjects()) {
+			TestWorkspace.setPreference(project, Settings.SKIP_IF_UNCHANGED, Boolean.TRUE.toString());
+		}
+		try {
+			// Changed settings reset the deployed fingerprint, so this build deploys once more
+			workspace.build(IncrementalProjectBuilder.FULL_BUILD);
+			final Map<Path, FileTime> jarsBefore = workspace.getLocalRepositoryJars();
+			Thread.sleep(FILE_TIME_RESOLUTION_MILLIS);
+			final long millis = workspace.build(IncrementalProjectBuilder.FULL_BUILD);
+
+			assertEquals("A full build of unchanged projects must not re-export any bundle", jarsBefore, workspace.getLocalRepositoryJars());
+			assertWithinBudget("No-op build", millis, NO_OP_BUILD_BUDGET_MILLIS);
+		} finally {
+			for (final IProject project : workspace.getProjects()) {
+				TestWorkspace.setPreference(project, Settings.SKIP_IF_UNCHANGED, null);
+			}
+		}
+	}
+
+	private static void assertWithinBudget(final String build, final long millis, final long budgetMillis) {
+		assertTrue(String.format("%s of %d projects x %d classes took %dms, exceeding the budget of %dms", build, PROJECTS, CLASSES, millis, budgetMillis),
+				millis <= budgetMillis);
+	}
+
+}
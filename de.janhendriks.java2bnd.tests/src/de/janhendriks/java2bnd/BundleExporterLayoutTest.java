@@ -0,0 +1,155 @@
+package de.janhendriks.java2bnd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IFolder;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IncrementalProjectBuilder;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.ui.jarpackager.JarPackageData;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Test comparing the bundles streamed by the {@link BundleExporter} with the bundles of the Eclipse JAR exporter
+ * ({@link JarPackageData}) used before, for a project with resources, a class folder and a library archive.
+ */
+public final class BundleExporterLayoutTest {
+
+	private static final String PROJECT = "layout.project";
+
+	private static TestWorkspace workspace;
+	private static IProject project;
+
+	@BeforeClass
+	public static void createWorkspace() throws Exception {
+		workspace = new TestWorkspace();
+		project = workspace.createJavaToBndProject(PROJECT, 5);
+		// Copied into the output folder by the Java builder
+		TestWorkspace.writeFile(project, String.format("src/%s/pkg0/config.properties", PROJECT.replace('.', '/')), "key=value\n");
+		// Non-Java resources, the excluded build.properties must not be exported by both
+		TestWorkspace.writeFile(project, "OSGI-INF/component.xml", "<component/>\n");
+		TestWorkspace.writeFile(project, "build.properties", "bin.includes = .\n");
+		// Class folder, exported at the root of the bundle
+		final IFolder classFolder = TestWorkspace.createFolder(project, "classes");
+		TestWorkspace.writeFile(project, "classes/data/info.txt", "info\n");
+		workspace.addClasspathEntry(project, JavaCore.newLibraryEntry(classFolder.getFullPath(), null, null));
+		// Library archive on the classpath, exported by neither
+		TestWorkspace.writeFile(project, "lib/library.jar", createLibrary());
+		workspace.addClasspathEntry(project, JavaCore.newLibraryEntry(project.getFullPath().append("lib/library.jar"), null, null));
+		workspace.build(IncrementalProjectBuilder.FULL_BUILD);
+	}
+
+	@AfterClass
+	public static void deleteWorkspace() throws Exception {
+		if (workspace != null) {
+			workspace.close();
+		}
+	}
+
+	@Test
+	public void streamedBundleMatchesEclipseJarExporter() throws Exception {
+		final Settings settings = Settings.get(project, Collections.emptyMap());
+		final File streamedBundle = new BundleExporter(project, settings, message -> {
+			// Not of interest
+		}).export(null, null).get();
+		final File eclipseBundle = exportWithJarPackageData(settings);
+		try {
+			final Map<String, Long> streamedEntries = readFileEntries(streamedBundle);
+			assertEquals("Files and their content must match the Eclipse JAR exporter", readFileEntries(eclipseBundle), streamedEntries);
+			assertTrue("Class folder content must be exported at the root", streamedEntries.containsKey("data/info.txt"));
+			// The project manifest is written with the platform line separator, both normalise it to CRLF
+			assertTrue("The manifest must be exported", streamedEntries.containsKey(Utils.MANIFEST_LOCATION));
+		} finally {
+			streamedBundle.delete();
+			eclipseBundle.delete();
+		}
+	}
+
+	/**
+	 * Export the project like the builder did before streaming, with the same elements and JAR exporter options.
+	 */
+	private static File exportWithJarPackageData(final Settings settings) throws Exception {
+		final IJavaProject jproject = JavaCore.create(project);
+		final List<Object> elements = new ArrayList<>();
+		for (final IJavaElement javaElement : jproject.getChildren()) {
+			elements.add(javaElement);
+		}
+		for (final Object nonJavaElement : jproject.getNonJavaResources()) {
+			final boolean excludedFile = nonJavaElement instanceof IFile && settings.getExcludeFiles().contains(((IFile) nonJavaElement).getName());
+			final boolean excludedFolder = nonJavaElement instanceof IFolder && settings.getExcludeFolders().contains(((IFolder) nonJavaElement).getName());
+			if (!excludedFile && !excludedFolder) {
+				elements.add(nonJavaElement);
+			}
+		}
+		final File jarFile = File.createTempFile(PROJECT + "-eclipse-", ".jar");
+		final JarPackageData jarPackage = new JarPackageData();
+		jarPackage.setManifestLocation(project.getFile(Utils.MANIFEST_LOCATION).getFullPath());
+		jarPackage.setUsesManifest(true);
+		jarPackage.setSaveManifest(false);
+		jarPackage.setGenerateManifest(false);
+		jarPackage.setReuseManifest(false);
+		jarPackage.setElements(elements.toArray());
+		jarPackage.setExportClassFiles(true);
+		jarPackage.setExportOutputFolders(true);
+		jarPackage.setExportJavaFiles(settings.isIncludeSources());
+		jarPackage.setRefactoringAware(false);
+		jarPackage.setUseSourceFolderHierarchy(true);
+		jarPackage.setSaveDescription(false);
+		jarPackage.setDescriptionLocation(new Path(""));
+		jarPackage.setCompress(false);
+		jarPackage.setIncludeDirectoryEntries(true);
+		jarPackage.setOverwrite(true);
+		jarPackage.setBuildIfNeeded(false);
+		jarPackage.setJarLocation(Path.fromOSString(jarFile.getAbsolutePath()));
+		jarPackage.createJarExportRunnable(null).run(new NullProgressMonitor());
+		return jarFile;
+	}
+
+	/**
+	 * @return CRC of each file entry by its name, directory entries are left out
+	 */
+	private static Map<String, Long> readFileEntries(final File bundle) throws IOException {
+		final Map<String, Long> entries = new TreeMap<>();
+		try (final ZipFile zipFile = new ZipFile(bundle)) {
+			for (final ZipEntry entry : Collections.list(zipFile.entries())) {
+				if (!entry.isDirectory()) {
+					entries.put(entry.getName(), entry.getCrc());
+				}
+			}
+		}
+		return entries;
+	}
+
+	private static byte[] createLibrary() throws IOException {
+		final ByteArrayOutputStream library = new ByteArrayOutputStream();
+		try (final JarOutputStream jarOutput = new JarOutputStream(library)) {
+			jarOutput.putNextEntry(new JarEntry("library/Library.txt"));
+			jarOutput.write("library".getBytes(StandardCharsets.UTF_8));
+			jarOutput.closeEntry();
+		}
+		return library.toByteArray();
+	}
+
+}
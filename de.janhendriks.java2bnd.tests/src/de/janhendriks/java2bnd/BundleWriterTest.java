@@ -0,0 +1,128 @@
+package de.janhendriks.java2bnd;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test of the {@link BundleWriter}, writing bundles and reading them back with {@link ZipFile}.
+ */
+public final class BundleWriterTest {
+
+	private static final CompressionPolicy SEQUENTIAL = new CompressionPolicy(CompressionPolicy.Method.DEFLATED, Deflater.DEFAULT_COMPRESSION, Collections.emptyList(), 0L, Integer.MAX_VALUE);
+	private static final CompressionPolicy PARALLEL = new CompressionPolicy(CompressionPolicy.Method.DEFLATED, Deflater.DEFAULT_COMPRESSION, Collections.emptyList(), 0L, 1);
+
+	private File bundle;
+
+	@Before
+	public void createBundleFile() throws IOException {
+		bundle = File.createTempFile("bundle-writer-test-", ".jar");
+	}
+
+	@After
+	public void deleteBundleFile() {
+		bundle.delete();
+	}
+
+	@Test
+	public void entriesOfAnySizeAreReadBackUnchanged() throws Exception {
+		assertRoundTrip(SEQUENTIAL);
+	}
+
+	@Test
+	public void entriesCompressedInParallelAreReadBackUnchangedInOrder() throws Exception {
+		assertRoundTrip(PARALLEL);
+	}
+
+	@Test
+	public void spillBufferSpillsBeyondThreshold() throws Exception {
+		final BundleWriter.SpillBuffer buffer = new BundleWriter.SpillBuffer(16);
+		buffer.write(new byte[16], 0, 16);
+		assertFalse("Content up to the threshold must be kept in memory", buffer.isSpilled());
+		buffer.write(new byte[] { 1 }, 0, 1);
+		buffer.close();
+		assertTrue("Content beyond the threshold must be spilled", buffer.isSpilled());
+
+		final ByteArrayOutputStream content = new ByteArrayOutputStream();
+		buffer.writeTo(content);
+		buffer.delete();
+		assertEquals(17, content.size());
+		assertEquals(1, content.toByteArray()[16]);
+	}
+
+	@Test
+	public void bundleWithMoreEntriesThanZipSupportsUsesZip64() throws Exception {
+		final int entries = 0xFFFF + 10;
+		try (final BundleWriter writer = new BundleWriter(bundle, SEQUENTIAL)) {
+			for (int i = 0; i < entries; i++) {
+				final byte[] data = Integer.toString(i).getBytes();
+				writer.addEntry(String.format("entry%d.txt", i), 0L, () -> new ByteArrayInputStream(data));
+			}
+		}
+		try (final ZipFile zipFile = new ZipFile(bundle)) {
+			assertEquals(entries, zipFile.size());
+			assertArrayEquals("12345".getBytes(), read(zipFile, zipFile.getEntry("entry12345.txt")));
+		}
+	}
+
+	private void assertRoundTrip(final CompressionPolicy policy) throws IOException {
+		final Random random = new Random(42L);
+		final byte[] incompressible = new byte[BundleWriter.SPILL_THRESHOLD * 3];
+		random.nextBytes(incompressible);
+		final Map<String, byte[]> contents = new LinkedHashMap<>();
+		contents.put("META-INF/MANIFEST.MF", "Manifest-Version: 1.0\r\n".getBytes());
+		contents.put("empty.txt", new byte[0]);
+		contents.put("compressible.txt", new byte[BundleWriter.SPILL_THRESHOLD * 3]);
+		contents.put("incompressible.bin", incompressible);
+		for (int i = 0; i < 100; i++) {
+			contents.put(String.format("pkg/Class%d.class", i), new byte[i * 100]);
+		}
+		try (final BundleWriter writer = new BundleWriter(bundle, policy)) {
+			writer.addDirectory("META-INF/", 0L);
+			for (final Map.Entry<String, byte[]> content : contents.entrySet()) {
+				writer.addEntry(content.getKey(), System.currentTimeMillis(), () -> new ByteArrayInputStream(content.getValue()));
+			}
+		}
+
+		try (final ZipFile zipFile = new ZipFile(bundle)) {
+			assertEquals(contents.size() + 1, zipFile.size());
+			assertEquals("Entries must be written in the order they were added", "META-INF/", zipFile.entries().nextElement().getName());
+			for (final Map.Entry<String, byte[]> content : contents.entrySet()) {
+				assertArrayEquals(content.getKey(), content.getValue(), read(zipFile, zipFile.getEntry(content.getKey())));
+			}
+			assertEquals("Compressible entries must be deflated", ZipEntry.DEFLATED, zipFile.getEntry("compressible.txt").getMethod());
+			assertEquals("Entries not shrinking when deflated must be stored", ZipEntry.STORED, zipFile.getEntry("incompressible.bin").getMethod());
+		}
+	}
+
+	private static byte[] read(final ZipFile zipFile, final ZipEntry entry) throws IOException {
+		try (final InputStream input = zipFile.getInputStream(entry)) {
+			final ByteArrayOutputStream content = new ByteArrayOutputStream();
+			final byte[] buffer = new byte[8192];
+			int length;
+			while ((length = input.read(buffer)) != -1) {
+				content.write(buffer, 0, length);
+			}
+			return content.toByteArray();
+		}
+	}
+
+}
@@ -0,0 +1,68 @@
+package de.janhendriks.java2bnd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.jar.JarFile;
+
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IncrementalProjectBuilder;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Test of the exclusion of test source folders from the exported bundle, run as JUnit plug-in test against a generated
+ * bnd workspace.
+ */
+public final class TestSourceFolderTest {
+
+	private static final String SEPARATE_OUTPUT_PROJECT = "tests.separate";
+	private static final String SHARED_OUTPUT_PROJECT = "tests.shared";
+
+	private static TestWorkspace workspace;
+
+	@BeforeClass
+	public static void createWorkspace() throws Exception {
+		workspace = new TestWorkspace();
+		final IProject separateOutputProject = workspace.createJavaToBndProject(SEPARATE_OUTPUT_PROJECT, 1);
+		workspace.addTestSourceFolder(separateOutputProject, "test", "bin-test");
+		// Read back from the live bundle
+		TestWorkspace.setPreference(separateOutputProject, Settings.DEPLOYMENT, Settings.Deployment.LIVE.name().toLowerCase(Locale.ROOT));
+		final IProject sharedOutputProject = workspace.createJavaToBndProject(SHARED_OUTPUT_PROJECT, 1);
+		workspace.addTestSourceFolder(sharedOutputProject, "test", null);
+		workspace.build(IncrementalProjectBuilder.FULL_BUILD);
+	}
+
+	@AfterClass
+	public static void deleteWorkspace() throws Exception {
+		if (workspace != null) {
+			workspace.close();
+		}
+	}
+
+	@Test
+	public void testFolderWithSeparateOutputIsExcludedWithoutWarning() throws Exception {
+		final File file = WorkspaceRepository.getInstance().get(SEPARATE_OUTPUT_PROJECT, null, Collections.emptyMap());
+		assertNotNull("The live bundle must be exported on request", file);
+		try (final JarFile jarFile = new JarFile(file)) {
+			assertFalse("Test classes must not be exported", jarFile.stream().anyMatch(entry -> entry.getName().contains("/tests/")));
+		}
+		assertEquals("No warning expected", 0, workspace.getProjects().get(0).findMarkers(Utils.PROBLEM_MARKER_ID, false, IResource.DEPTH_ZERO).length);
+	}
+
+	@Test
+	public void testFolderSharingMainOutputIsWarnedAbout() throws Exception {
+		final IMarker[] markers = workspace.getProjects().get(1).findMarkers(Utils.PROBLEM_MARKER_ID, false, IResource.DEPTH_ZERO);
+
+		assertEquals("The shared output folder must be warned about", 1, markers.length);
+		assertEquals(IMarker.SEVERITY_WARNING, markers[0].getAttribute(IMarker.SEVERITY, -1));
+	}
+
+}
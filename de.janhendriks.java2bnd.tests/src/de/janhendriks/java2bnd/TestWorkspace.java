@@ -0,0 +1,291 @@
+package de.janhendriks.java2bnd;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.eclipse.core.resources.IContainer;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IFolder;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IProjectDescription;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IWorkspaceDescription;
+import org.eclipse.core.resources.IncrementalProjectBuilder;
+import org.eclipse.core.resources.ProjectScope;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences;
+import org.eclipse.jdt.core.IClasspathAttribute;
+import org.eclipse.jdt.core.IClasspathEntry;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.JavaCore;
+
+import org.osgi.service.prefs.BackingStoreException;
+
+import aQute.bnd.build.Workspace;
+
+/**
+ * Test fixture generating a temporary bnd workspace, i.e. a directory containing a {@code cnf} project with a
+ * file-based {@code Local} repository and any number of synthetic Java2bnd projects, all of them imported into the
+ * Eclipse workspace of the test runtime. Auto-building is switched off, so that tests control each build.
+ */
+final class TestWorkspace implements AutoCloseable {
+
+	static final String LOCAL_REPOSITORY = "Local";
+	private static final String LOCAL_REPOSITORY_FOLDER = "localrepo";
+	private static final String JRE_CONTAINER = "org.eclipse.jdt.launching.JRE_CONTAINER";
+	// Classes per generated package
+	private static final int CLASSES_PER_PACKAGE = 100;
+
+	private final IWorkspace workspace = ResourcesPlugin.getWorkspace();
+	private final Path directory;
+	private final IProject cnf;
+	private final List<IProject> projects = new ArrayList<>();
+	private final boolean wasAutoBuilding;
+
+	/**
+	 * Create the temporary bnd workspace including its {@code cnf} project.
+	 *
+	 * @throws CoreException if the cnf project cannot be created
+	 * @throws IOException if the temporary directory cannot be created
+	 */
+	TestWorkspace() throws CoreException, IOException {
+		this.directory = Files.createTempDirectory("java2bnd-workspace-");
+		final IWorkspaceDescription description = workspace.getDescription();
+		this.wasAutoBuilding = description.isAutoBuilding();
+		description.setAutoBuilding(false);
+		workspace.setDescription(description);
+		this.cnf = createProject(Workspace.CNFDIR, new String[0]);
+		// File-based repository of bndlib, it stores bundles as <bsn>/<bsn>-<version>.jar
+		writeFile(cnf, "build.bnd", String.format("-plugin.java2bnd.local: aQute.lib.deployer.FileRepo; name=%s; location=${workspace}/%s/%s%n",
+				LOCAL_REPOSITORY, Workspace.CNFDIR, LOCAL_REPOSITORY_FOLDER));
+	}
+
+	/**
+	 * Create a Java project with the Java2bnd nature and the given number of generated classes.
+	 *
+	 * @param name name of the project, used as bundle symbolic name as well
+	 * @param classes number of classes to generate
+	 * @return the created project
+	 * @throws CoreException if the project cannot be created
+	 */
+	IProject createJavaToBndProject(final String name, final int classes) throws CoreException {
+		final IProject project = createProject(name, new String[] { JavaCore.NATURE_ID });
+		projects.add(project);
+		final IJavaProject jproject = JavaCore.create(project);
+		final IFolder sourceFolder = createFolder(project, "src");
+		jproject.setRawClasspath(new IClasspathEntry[] {
+				JavaCore.newSourceEntry(sourceFolder.getFullPath()),
+				JavaCore.newContainerEntry(new org.eclipse.core.runtime.Path(JRE_CONTAINER))
+		}, project.getFullPath().append("bin"), null);
+		final Collection<String> packages = new TreeSet<>();
+		for (int i = 0; i < classes; i++) {
+			final String packageName = String.format("%s.pkg%d", name, i / CLASSES_PER_PACKAGE);
+			packages.add(packageName);
+			writeClass(project, packageName, "Class" + i, "");
+		}
+		writeFile(project, Utils.MANIFEST_LOCATION, String.format("Manifest-Version: 1.0%nBundle-ManifestVersion: 2%nBundle-SymbolicName: %s%nBundle-Version: 1.0.0%n%s",
+				name, packages.isEmpty() ? "" : String.format("Export-Package: %s%n", String.join(",", packages))));
+		Utils.addJavaToBndNature(project, null);
+		return project;
+	}
+
+	/**
+	 * Add a test source folder containing one generated class to the classpath of the given project.
+	 *
+	 * @param project project to add the test source folder to
+	 * @param folder project-relative path of the test source folder
+	 * @param outputFolder project-relative path of its own output folder, or {@code null} to share the default one
+	 * @throws CoreException if the folder or the classpath cannot be written
+	 */
+	void addTestSourceFolder(final IProject project, final String folder, final String outputFolder) throws CoreException {
+		final IFolder testFolder = createFolder(project, folder);
+		addClasspathEntry(project, JavaCore.newSourceEntry(testFolder.getFullPath(), new IPath[0], new IPath[0],
+				outputFolder != null ? project.getFullPath().append(outputFolder) : null,
+				new IClasspathAttribute[] { JavaCore.newClasspathAttribute(IClasspathAttribute.TEST, Boolean.TRUE.toString()) }));
+		writeFile(project, String.format("%s/%s/tests/GeneratedTest.java", folder, project.getName().replace('.', '/')),
+				String.format("package %s.tests;%n%npublic class GeneratedTest {%n}%n", project.getName()));
+	}
+
+	/**
+	 * Append an entry to the raw classpath of the given project.
+	 *
+	 * @param project project to add the entry to
+	 * @param entry classpath entry to add
+	 * @throws CoreException if the classpath cannot be written
+	 */
+	void addClasspathEntry(final IProject project, final IClasspathEntry entry) throws CoreException {
+		final IJavaProject jproject = JavaCore.create(project);
+		final IClasspathEntry[] rawClasspath = jproject.getRawClasspath();
+		final IClasspathEntry[] classpath = Arrays.copyOf(rawClasspath, rawClasspath.length + 1);
+		classpath[rawClasspath.length] = entry;
+		jproject.setRawClasspath(classpath, jproject.getOutputLocation(), null);
+	}
+
+	/**
+	 * Write or overwrite a generated class of the given project.
+	 *
+	 * @param project project to write the class to
+	 * @param packageName package of the class
+	 * @param className simple name of the class
+	 * @param body additional members of the class
+	 * @throws CoreException if the source file cannot be written
+	 */
+	void writeClass(final IProject project, final String packageName, final String className, final String body) throws CoreException {
+		final String path = String.format("src/%s/%s.java", packageName.replace('.', '/'), className);
+		writeFile(project, path, String.format("package %s;%n%npublic class %s {%n%n\tpublic int value() {%n\t\treturn %d;%n\t}%n%s}%n",
+				packageName, className, className.hashCode(), body));
+	}
+
+	/**
+	 * Set or remove a setting of the Java2bnd builder in the project preferences of the given project.
+	 *
+	 * @param project project to configure
+	 * @param key key of the setting, e.g. {@link Settings#SKIP_IF_UNCHANGED}
+	 * @param value value of the setting, or {@code null} to remove it
+	 * @throws BackingStoreException if the project preferences cannot be stored
+	 */
+	static void setPreference(final IProject project, final String key, final String value) throws BackingStoreException {
+		final IEclipsePreferences preferences = new ProjectScope(project).getNode(Utils.CORE_PLUGIN_ID);
+		if (value == null) {
+			preferences.remove(key);
+		} else {
+			preferences.put(key, value);
+		}
+		preferences.flush();
+	}
+
+	/**
+	 * Build the whole Eclipse workspace.
+	 *
+	 * @param kind kind of the build, e.g. {@link IncrementalProjectBuilder#FULL_BUILD}
+	 * @return duration of the build in milliseconds
+	 * @throws CoreException if the build fails
+	 */
+	long build(final int kind) throws CoreException {
+		final long start = System.nanoTime();
+		workspace.build(kind, null);
+		return (System.nanoTime() - start) / 1_000_000L;
+	}
+
+	/**
+	 * @return last modification time of each jar file in the Local repository by its path
+	 * @throws IOException if the repository cannot be listed
+	 */
+	Map<Path, FileTime> getLocalRepositoryJars() throws IOException {
+		final Path repository = directory.resolve(Workspace.CNFDIR).resolve(LOCAL_REPOSITORY_FOLDER);
+		if (!Files.isDirectory(repository)) {
+			return new TreeMap<>();
+		}
+		try (final Stream<Path> files = Files.walk(repository)) {
+			final Map<Path, FileTime> jars = new TreeMap<>();
+			for (final Path jar : files.filter(file -> file.toString().endsWith(".jar")).collect(Collectors.toList())) {
+				jars.put(jar, Files.getLastModifiedTime(jar));
+			}
+			return jars;
+		}
+	}
+
+	/**
+	 * @return root directory of the bnd workspace
+	 */
+	File getDirectory() {
+		return directory.toFile();
+	}
+
+	/**
+	 * Delete one of the generated projects including its content.
+	 *
+	 * @param project project to delete
+	 * @throws CoreException if the project cannot be deleted
+	 */
+	void deleteProject(final IProject project) throws CoreException {
+		projects.remove(project);
+		project.delete(true, true, null);
+	}
+
+	/**
+	 * @return the generated Java2bnd projects in creation order
+	 */
+	List<IProject> getProjects() {
+		return projects;
+	}
+
+	private IProject createProject(final String name, final String[] natures) throws CoreException {
+		final IProject project = workspace.getRoot().getProject(name);
+		final IProjectDescription description = workspace.newProjectDescription(name);
+		description.setLocation(new org.eclipse.core.runtime.Path(directory.resolve(name).toString()));
+		description.setNatureIds(natures);
+		project.create(description, null);
+		project.open(null);
+		return project;
+	}
+
+	static IFolder createFolder(final IContainer container, final String path) throws CoreException {
+		final IFolder folder = container.getFolder(new org.eclipse.core.runtime.Path(path));
+		if (!folder.exists()) {
+			if (folder.getParent() instanceof IFolder) {
+				createFolder(container, folder.getParent().getProjectRelativePath().toPortableString());
+			}
+			folder.create(true, true, null);
+		}
+		return folder;
+	}
+
+	static void writeFile(final IProject project, final String path, final String content) throws CoreException {
+		writeFile(project, path, content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	static void writeFile(final IProject project, final String path, final byte[] content) throws CoreException {
+		final IFile file = project.getFile(new org.eclipse.core.runtime.Path(path));
+		final ByteArrayInputStream input = new ByteArrayInputStream(content);
+		if (file.exists()) {
+			file.setContents(input, true, false, null);
+			return;
+		}
+		if (file.getParent() instanceof IFolder) {
+			createFolder(project, file.getParent().getProjectRelativePath().toPortableString());
+		}
+		file.create(input, true, null);
+	}
+
+	/**
+	 * Delete all generated projects including their content and restore the auto-building state.
+	 */
+	@Override
+	public void close() throws CoreException, IOException {
+		for (final IProject project : projects) {
+			WorkspaceRepository.getInstance().remove(project);
+			project.delete(true, true, null);
+		}
+		projects.clear();
+		cnf.delete(true, true, null);
+		final IWorkspaceDescription description = workspace.getDescription();
+		description.setAutoBuilding(wasAutoBuilding);
+		workspace.setDescription(description);
+		if (Files.exists(directory)) {
+			try (final Stream<Path> files = Files.walk(directory)) {
+				for (final Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+					Files.delete(file);
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,145 @@
+package de.janhendriks.java2bnd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IncrementalProjectBuilder;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.osgi.namespace.IdentityNamespace;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Namespace;
+import org.osgi.resource.Requirement;
+import org.osgi.service.repository.Repository;
+
+import aQute.bnd.build.Workspace;
+import aQute.bnd.osgi.resource.RequirementBuilder;
+
+/**
+ * Test of the live bundles provided by the {@link WorkspaceRepository}, run as JUnit plug-in test against a generated
+ * bnd workspace.
+ */
+public final class WorkspaceRepositoryTest {
+
+	private static final String PROJECT = "live.project";
+	private static final String OTHER_PROJECT = "live.other";
+
+	private static TestWorkspace workspace;
+
+	@BeforeClass
+	public static void createWorkspace() throws Exception {
+		workspace = new TestWorkspace();
+		createLiveProject(PROJECT, 10);
+		createLiveProject(OTHER_PROJECT, 10);
+	}
+
+	private static IProject createLiveProject(final String name, final int classes) throws Exception {
+		final IProject project = workspace.createJavaToBndProject(name, classes);
+		TestWorkspace.setPreference(project, Settings.DEPLOYMENT, Settings.Deployment.LIVE.name().toLowerCase(Locale.ROOT));
+		return project;
+	}
+
+	@AfterClass
+	public static void deleteWorkspace() throws Exception {
+		if (workspace != null) {
+			workspace.close();
+		}
+	}
+
+	@Before
+	public void buildAll() throws Exception {
+		workspace.build(IncrementalProjectBuilder.FULL_BUILD);
+	}
+
+	@Test
+	public void repositoryIsRegisteredWithBndWorkspaceOfBuilder() throws Exception {
+		final Workspace bndWorkspace = Builder.getBndWorkspace(workspace.getDirectory());
+
+		assertSame("The repository must be found by its name", WorkspaceRepository.getInstance(), bndWorkspace.getRepository(WorkspaceRepository.REPOSITORY_NAME));
+		assertTrue("The resolver must find the repository", bndWorkspace.getPlugins(Repository.class).contains(WorkspaceRepository.getInstance()));
+	}
+
+	@Test
+	public void projectWithCopyDeploymentIsNotProvided() throws Exception {
+		final IProject project = workspace.createJavaToBndProject("live.copied", 1);
+		try {
+			workspace.build(IncrementalProjectBuilder.FULL_BUILD);
+
+			assertFalse("A copied project must only be provided by the Local repository", WorkspaceRepository.getInstance().list(null).contains("live.copied"));
+		} finally {
+			workspace.deleteProject(project);
+		}
+	}
+
+	@Test
+	public void findProvidersAnswersFromManifest() throws Exception {
+		final Requirement requirement = new RequirementBuilder(IdentityNamespace.IDENTITY_NAMESPACE)
+				.addDirective(Namespace.REQUIREMENT_FILTER_DIRECTIVE, String.format("(%s=%s)", IdentityNamespace.IDENTITY_NAMESPACE, PROJECT))
+				.buildSyntheticRequirement();
+		final Map<Requirement, Collection<Capability>> providers = WorkspaceRepository.getInstance().findProviders(Collections.singleton(requirement));
+
+		assertEquals("The live bundle must provide its identity", 1, providers.get(requirement).size());
+	}
+
+	@Test
+	public void incrementalBuildKeepsPathOfMaterialisedJar() throws Exception {
+		final File file = WorkspaceRepository.getInstance().get(PROJECT, null, Collections.emptyMap());
+		assertNotNull("The live bundle must be exported on request", file);
+		final IProject project = workspace.getProjects().get(0);
+		workspace.writeClass(project, PROJECT + ".pkg0", "Class0", "\n\tpublic int changed() {\n\t\treturn 1;\n\t}\n");
+		workspace.build(IncrementalProjectBuilder.INCREMENTAL_BUILD);
+
+		// Buildpaths of other projects reference the path, so it must never vanish
+		assertTrue("An incremental build must not delete the jar file", file.isFile());
+		assertEquals("The jar file must keep its path", file, WorkspaceRepository.getInstance().get(PROJECT, null, Collections.emptyMap()));
+	}
+
+	@Test
+	public void closedProjectIsDroppedAndReopenedProjectProvided() throws Exception {
+		final IProject project = workspace.getProjects().get(0);
+		project.close(null);
+		assertFalse("A closed project must not be provided", WorkspaceRepository.getInstance().list(null).contains(PROJECT));
+
+		project.open(null);
+		assertTrue("A reopened project must be provided without building it", WorkspaceRepository.getInstance().list(null).contains(PROJECT));
+	}
+
+	@Test
+	public void registeringPopulatesFromAllProjects() throws Exception {
+		for (final IProject project : workspace.getProjects()) {
+			WorkspaceRepository.getInstance().remove(project);
+		}
+		// A new bnd workspace instance, as after restarting Eclipse
+		try (final Workspace bndWorkspace = new Workspace(workspace.getDirectory())) {
+			WorkspaceRepository.register(bndWorkspace, message -> {
+				// Not of interest
+			});
+		}
+
+		assertTrue("Every open Java2bnd project must be provided", WorkspaceRepository.getInstance().list(null).containsAll(Arrays.asList(PROJECT, OTHER_PROJECT)));
+	}
+
+	@Test
+	public void deletedProjectIsDropped() throws Exception {
+		final IProject project = createLiveProject("live.deleted", 1);
+		workspace.build(IncrementalProjectBuilder.FULL_BUILD);
+		assertTrue("A built project must be provided", WorkspaceRepository.getInstance().list(null).contains("live.deleted"));
+
+		workspace.deleteProject(project);
+		assertFalse("A deleted project must not be provided", WorkspaceRepository.getInstance().list(null).contains("live.deleted"));
+	}
+
+}
@@ -0,0 +1,138 @@
+package de.janhendriks.java2bnd;
+
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Metrics of a single build of a project, i.e. the duration of each build phase and what has been exported.
+ * They are reported to the builder console after each build, to explain where the time of a slow build went.
+ */
+final class BuildMetrics {
+
+	private static final long MEBIBYTE = 1024L * 1024L;
+
+	private final String projectName;
+	private final boolean fullBuild;
+	private final long startNanos = System.nanoTime();
+	private final Map<String, Long> phaseMillis = new LinkedHashMap<>();
+	private String currentPhase;
+	private long currentPhaseStartNanos;
+	private long totalMillis = -1;
+	private int exportedBundles;
+	private long exportedBytes;
+	private int cacheHits;
+	private int skippedUnchanged;
+	// Heap retained after garbage collection while exporting and number of collections, -1 if not sampled
+	private long initialRetainedHeapBytes = -1;
+	private long maxRetainedHeapBytes = -1;
+	private long initialCollections = -1;
+	private long collections;
+
+	BuildMetrics(final String projectName, final boolean fullBuild) {
+		this.projectName = projectName;
+		this.fullBuild = fullBuild;
+	}
+
+	/**
+	 * Start measuring the given phase, ending the previous phase if any.
+	 *
+	 * @param phase name of the phase, e.g. the task name shown in the progress monitor
+	 */
+	void startPhase(final String phase) {
+		endPhase();
+		this.currentPhase = phase;
+		this.currentPhaseStartNanos = System.nanoTime();
+	}
+
+	private void endPhase() {
+		if (currentPhase != null) {
+			phaseMillis.merge(currentPhase, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - currentPhaseStartNanos), Long::sum);
+			currentPhase = null;
+		}
+	}
+
+	/**
+	 * Record that a bundle has been exported during this build.
+	 *
+	 * @param jarFile exported jar file
+	 */
+	void exported(final File jarFile) {
+		exportedBundles++;
+		exportedBytes += jarFile.length();
+	}
+
+	/**
+	 * Record that a cached bundle has been reused instead of exporting the project.
+	 */
+	void cacheHit() {
+		cacheHits++;
+	}
+
+	/**
+	 * Sample the heap retained after the latest garbage collection of each heap pool, to be called regularly while
+	 * exporting. Unlike the used heap, it does not count garbage not yet collected; it only changes when the garbage
+	 * collector runs, so the number of collections during the export is recorded as well. Comparing the highest sample
+	 * with the first one shows whether the export retained memory that grows with the size of the project.
+	 */
+	void sampleHeap() {
+		long retainedHeapBytes = 0L;
+		for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			final MemoryUsage collectionUsage = pool.getType() == MemoryType.HEAP ? pool.getCollectionUsage() : null;
+			if (collectionUsage != null) {
+				retainedHeapBytes += collectionUsage.getUsed();
+			}
+		}
+		long currentCollections = 0L;
+		for (final GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			currentCollections += Math.max(collector.getCollectionCount(), 0L);
+		}
+		if (initialCollections < 0) {
+			initialRetainedHeapBytes = retainedHeapBytes;
+			initialCollections = currentCollections;
+		}
+		maxRetainedHeapBytes = Math.max(maxRetainedHeapBytes, retainedHeapBytes);
+		collections = currentCollections - initialCollections;
+	}
+
+	/**
+	 * Record that the export has been skipped, as the project is unchanged since its last deployment.
+	 */
+	void skippedUnchanged() {
+		skippedUnchanged++;
+	}
+
+	/**
+	 * End the measurement of this build.
+	 *
+	 * @return these metrics
+	 */
+	BuildMetrics finish() {
+		endPhase();
+		if (totalMillis < 0) {
+			totalMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+		}
+		return this;
+	}
+
+	boolean isFullBuild() {
+		return fullBuild;
+	}
+
+	@Override
+	public String toString() {
+		final String phases = phaseMillis.entrySet().stream().map(entry -> entry.getKey() + "=" + entry.getValue() + "ms").collect(Collectors.joining(", "));
+		final String heap = maxRetainedHeapBytes < 0 ? "" : String.format(", heap retained after GC %d MiB before and up to %d MiB while exporting with %d GC(s)",
+				initialRetainedHeapBytes / MEBIBYTE, maxRetainedHeapBytes / MEBIBYTE, collections);
+		return String.format("%s build of project %s took %dms [%s], exported %d bundle(s) with %d bytes, reused %d cached bundle(s), skipped %d unchanged bundle(s)%s",
+				isFullBuild() ? "Full" : "Incremental", projectName, totalMillis, phases, exportedBundles, exportedBytes, cacheHits, skippedUnchanged, heap);
+	}
+
+}
@@ -4,37 +4,36 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
-import java.lang.reflect.InvocationTargetException;
-import java.nio.charset.StandardCharsets;
-import java.util.Arrays;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Optional;
-import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
-import org.eclipse.core.resources.IFile;
-import org.eclipse.core.resources.IFolder;
+import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IResourceDelta;
 import org.eclipse.core.resources.IWorkspaceRoot;
 import org.eclipse.core.resources.IncrementalProjectBuilder;
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
-import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
-import org.eclipse.core.runtime.Path;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.SubMonitor;
-import org.eclipse.jdt.core.IJavaElement;
-import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jdt.core.JavaCore;
-import org.eclipse.jdt.core.JavaModelException;
-import org.eclipse.jdt.ui.jarpackager.IJarExportRunnable;
-import org.eclipse.jdt.ui.jarpackager.JarPackageData;
 import org.eclipse.ui.console.MessageConsoleStream;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.framework.ServiceReference;
 
 import aQute.bnd.build.Workspace;
 import aQute.bnd.service.RepositoryPlugin;
@@ -42,26 +41,42 @@ import aQute.bnd.service.RepositoryPlugin;
 /**
  * Java to bnd builder for zipping compiled build artifacts of an arbitrary Java
  * project into an JAR bundle file and copy it to a well-defined bnd workspace
- * repository location.
+ * repository location. Additionally, the project is provided as live bundle by the
+ * {@link WorkspaceRepository} without any copying.
+ * The arguments of the builder command, e.g. a performance profile, take precedence over the project settings.
  */
 public final class Builder extends IncrementalProjectBuilder {
 
-	/**
-	 * The well-defined name of the bnd workspace repository that the artifacts are
-	 * deployed to if the repo is present. "Local" is a repository created by
-	 * default, but may be missing if user decided to remove it
-	 */
-	private String bndWorkspaceRepositoryName = "Local";
+	// Serialises the asynchronous deployments of all projects, so that they never overtake each other
+	private static final ISchedulingRule DEPLOY_RULE = new ISchedulingRule() {
+		@Override
+		public boolean contains(final ISchedulingRule rule) {
+			return rule == this;
+		}
+
+		@Override
+		public boolean isConflicting(final ISchedulingRule rule) {
+			return rule == this;
+		}
+	};
 
 	private MessageConsoleStream consoleStream;
-	// Folders to exclude from export (case-sensitive)
-	private Collection<String> excludeFolders;
-	// Files to exclude from export (case-sensitive)
-	private Collection<String> excludeFiles;
+	/**
+	 * Settings of the project, e.g. the well-defined name of the bnd workspace repository
+	 * that the artifacts are deployed to, files and folders to exclude and the compression policy
+	 */
+	private Settings settings;
+	private BundleExporter exporter;
+	// Fingerprint of the bundle last deployed into the bnd workspace repository, only set once its deployment succeeded
+	private volatile String lastDeployedFingerprint;
 
 	@Override
 	protected IProject[] build(int kind, @SuppressWarnings("rawtypes") Map args, IProgressMonitor monitor) throws CoreException {
 		// kind is one of FULL_BUILD, INCREMENTAL_BUILD, AUTO_BUILD, CLEAN_BUILD
+		// Arguments of the builder command in the .project file, always string keys and values
+		@SuppressWarnings("unchecked")
+		final Map<String, String> arguments = args;
+		final BuildMetrics metrics;
 		switch (kind) {
 		default:
 		case IncrementalProjectBuilder.FULL_BUILD:
@@ -69,7 +84,8 @@ public final class Builder extends IncrementalProjectBuilder {
 			if (Utils.hasJavaBuildErrors(getProject())) {
 				return new IProject[0];
 			}
-			fullBuild(monitor);
+			metrics = new BuildMetrics(getProject().getName(), true);
+			fullBuild(arguments, monitor, metrics);
 			break;
 		case IncrementalProjectBuilder.INCREMENTAL_BUILD:
 		case IncrementalProjectBuilder.AUTO_BUILD:
@@ -78,211 +94,240 @@ public final class Builder extends IncrementalProjectBuilder {
 			}
 			final IResourceDelta delta = getDelta(getProject());
 			if (delta == null) {
-				fullBuild(monitor);
+				metrics = new BuildMetrics(getProject().getName(), true);
+				fullBuild(arguments, monitor, metrics);
 			} else {
-				incrementalBuild(delta, monitor);
+				metrics = new BuildMetrics(getProject().getName(), false);
+				incrementalBuild(delta, arguments, monitor, metrics);
 			}
 			break;
 		}
+		reportMetrics(metrics.finish());
 		return new IProject[0];
 	}
 
-	protected void incrementalBuild(final IResourceDelta delta, final IProgressMonitor monitor) {
-		// TODO Implement me
-		log(String.format("%s: Delta changes of %s (nothing done at the moment)", Utils.BUILDER_ID, delta.getFullPath().toString()));
+	protected void incrementalBuild(final IResourceDelta delta, final Map<String, String> arguments, final IProgressMonitor monitor, final BuildMetrics metrics) throws CoreException {
+		log(String.format("%s: Delta changes of %s, updating live bundle only", Utils.BUILDER_ID, delta.getFullPath().toString()));
+		metrics.startPhase("Reading settings");
+		readSettings(arguments);
+		// The classpath may have changed without a full build of this builder
+		updateProblemMarkers();
+		metrics.startPhase("Updating live bundle");
+		// Cheap: only reads the manifest, the jar file of the live bundle is exported again on demand
+		updateWorkspaceRepository();
 	}
 
-	protected void fullBuild(final IProgressMonitor monitor) throws CoreException {
+	protected void fullBuild(final Map<String, String> arguments, final IProgressMonitor monitor, final BuildMetrics metrics) throws CoreException {
 		// We have 4 sub-tasks to be done
 		final SubMonitor subMonitor = SubMonitor.convert(monitor, 4);
+		metrics.startPhase("Checking builder order");
 		subMonitor.setTaskName("Checking builder order");
 		subMonitor.subTask("Checking builder order");
 		Utils.checkBuilderOrdering(getProject(), subMonitor.split(1));
 
+		metrics.startPhase("Reading settings");
 		subMonitor.setTaskName("Reading settings");
 		subMonitor.subTask("Reading settings");
-		readFilesAndFoldersToExclude();
+		readSettings(arguments);
+		updateProblemMarkers();
+		updateWorkspaceRepository();
 		subMonitor.split(1);
+		if (settings.getDeployment() == Settings.Deployment.LIVE) {
+			log(String.format("%s: Project %s is provided by the %s repository only", Utils.BUILDER_ID, getProject().getName(), WorkspaceRepository.REPOSITORY_NAME));
+			deploy(Optional.empty(), Optional.empty(), metrics);
+			subMonitor.done();
+			return;
+		}
+
+		// Reuse a previously exported bundle with the same inputs, e.g. after switching git branches back and forth
+		metrics.startPhase("Looking up bundle cache");
+		final boolean cacheEnabled = settings.getBundleCacheMaxBytes() > 0;
+		// The fingerprint walks all exported files, so it is only computed if the cache or skip_if_unchanged uses it
+		final Optional<String> fingerprintOpt = cacheEnabled || settings.isSkipIfUnchanged() ? exporter.fingerprint() : Optional.empty();
+		if (settings.isSkipIfUnchanged() && fingerprintOpt.isPresent() && fingerprintOpt.get().equals(lastDeployedFingerprint)) {
+			log(String.format("%s: Project %s unchanged since its last deployment, skipping export", Utils.BUILDER_ID, getProject().getName()));
+			metrics.skippedUnchanged();
+			// The classpath is not part of the fingerprint, deploying libraries is deduplicated anyway
+			deploy(Optional.empty(), Optional.empty(), metrics);
+			subMonitor.done();
+			return;
+		}
+		final Optional<File> cachedJarFileOpt = cacheEnabled ? fingerprintOpt.flatMap(BundleCache::lookup) : Optional.empty();
+		if (cachedJarFileOpt.isPresent()) {
+			log(String.format("%s: Reusing cached bundle %s for project %s", Utils.BUILDER_ID, cachedJarFileOpt.get().getAbsolutePath(), getProject().getName()));
+			metrics.cacheHit();
+			subMonitor.split(1);
+			metrics.startPhase("Add project to bnd repository");
+			subMonitor.setTaskName("Add project to bnd repository");
+			subMonitor.subTask("Add project to bnd repository");
+			// The cached bundle may be evicted by another build before an asynchronous deployment reads it
+			final File jarFile = settings.isAsyncDeploy() ? copyToTemporaryFile(cachedJarFileOpt.get()) : cachedJarFileOpt.get();
+			deploy(Optional.of(jarFile), fingerprintOpt, metrics);
+			subMonitor.done();
+			return;
+		}
 
 		log(String.format("%s: Exporting project %s", Utils.BUILDER_ID, getProject().getName()));
+		metrics.startPhase("Creating temporary jar file");
 		subMonitor.setTaskName("Creating temporary jar file");
 		subMonitor.subTask("Creating temporary jar file");
 
 		// Create a temporary jar package exported from the project
-		final Optional<File> exportedProjectJarFileOpt = exportProjectIntoJarFile(subMonitor.split(1));
+		final Optional<File> exportedProjectJarFileOpt = exporter.export(subMonitor.split(1), metrics);
 		if (!exportedProjectJarFileOpt.isPresent()) {
 			// Skipping this project
 			subMonitor.done();
 			return;
 		}
+		metrics.exported(exportedProjectJarFileOpt.get());
+		if (cacheEnabled && fingerprintOpt.isPresent()) {
+			storeInBundleCache(fingerprintOpt.get(), exportedProjectJarFileOpt.get());
+		}
 
+		metrics.startPhase("Add project to bnd repository");
 		subMonitor.setTaskName("Add project to bnd repository");
 		subMonitor.subTask("Add project to bnd repository");
 		// Provide this jar file to the bnd repository
-		copyJarFileIntoBndWorkspaceRepository(exportedProjectJarFileOpt.get());
+		deploy(exportedProjectJarFileOpt, fingerprintOpt, metrics);
 		subMonitor.done();
 
 		// Delete the temporary jar file again upon exit
 		exportedProjectJarFileOpt.get().deleteOnExit();
 	}
 
-	private Optional<File> exportProjectIntoJarFile(final IProgressMonitor monitor) throws CoreException {
-		// Skip this project and display / log a hint that the builder could not proceed
-		final Optional<IPath> manifestLocationOpt = Utils.getManifestLocation(getProject());
-		if (!manifestLocationOpt.isPresent()) {
-			final String errorMessage = String.format("%s project %s: %s file not found, skipping project!", Utils.BUILDER_ID, getProject().getName(), Utils.MANIFEST_LOCATION);
-			log(errorMessage);
-			return Optional.empty();
+	/**
+	 * Put the given bundle into the bnd workspace repository and deploy the libraries of the project after it, in a
+	 * background job if configured by the settings.
+	 * 
+	 * @param jarFileOpt bundle to deploy, must be kept until the end of the session, or empty to deploy libraries only
+	 * @param fingerprintOpt fingerprint of the bundle, if computed
+	 * @param metrics metrics of the current build
+	 * @throws CoreException if the synchronous deployment failed
+	 */
+	private void deploy(final Optional<File> jarFileOpt, final Optional<String> fingerprintOpt, final BuildMetrics metrics) throws CoreException {
+		if (!jarFileOpt.isPresent() && !settings.isDeployLibraries()) {
+			return;
 		}
-
-		final Object[] exportElements = retrieveSelectedElementsToExport();
-		if (exportElements == null || exportElements.length == 0) {
-			log(String.format("%s project %s: Nothing to export", Utils.BUILDER_ID, getProject().getName()));
-			return Optional.empty();
+		// Captured now, the builder may read other settings before an asynchronous deployment runs
+		final Settings deploySettings = this.settings;
+		// Obtained now, an asynchronous deployment still deduplicates libraries with the other deployments of this build
+		final LibraryDeployer.WorkspaceBuildScope scope = LibraryDeployer.getWorkspaceBuildScope();
+		if (!deploySettings.isAsyncDeploy()) {
+			if (jarFileOpt.isPresent()) {
+				copyJarFileIntoBndWorkspaceRepository(jarFileOpt.get(), deploySettings.getBndWorkspaceRepositoryName());
+				lastDeployedFingerprint = fingerprintOpt.orElse(null);
+			}
+			metrics.startPhase("Deploying libraries");
+			deployLibraries(deploySettings, scope);
+			return;
 		}
+		final Job deployJob = new Job(String.format("%s: Deploying project %s", Utils.BUILDER_NAME, getProject().getName())) {
+			@Override
+			protected IStatus run(final IProgressMonitor monitor) {
+				try {
+					if (jarFileOpt.isPresent()) {
+						copyJarFileIntoBndWorkspaceRepository(jarFileOpt.get(), deploySettings.getBndWorkspaceRepositoryName());
+						// Only an unchanged project deployed successfully is skipped by the next build
+						lastDeployedFingerprint = fingerprintOpt.orElse(null);
+					}
+				} catch (CoreException e) {
+					return e.getStatus();
+				}
+				try {
+					// Libraries are deployed in one batch after the project bundle
+					deployLibraries(deploySettings, scope);
+					return Status.OK_STATUS;
+				} catch (CoreException e) {
+					return e.getStatus();
+				}
+			}
+		};
+		deployJob.setRule(DEPLOY_RULE);
+		deployJob.setSystem(true);
+		deployJob.schedule();
+	}
 
-		// Reuse and invoke the internal Eclipse JAR exporter
-		// jarPackage is an object containing all required information to make an export
-		final JarPackageData jarPackage = new JarPackageData();
-		// Explicitly add the project Manifest
-		jarPackage.setManifestLocation(manifestLocationOpt.get());
-		jarPackage.setUsesManifest(true);
-		jarPackage.setSaveManifest(false);
-		jarPackage.setGenerateManifest(false);
-		jarPackage.setReuseManifest(false);
-		jarPackage.setElements(exportElements);
-		jarPackage.setExportClassFiles(true);
-		jarPackage.setExportOutputFolders(true);
-		jarPackage.setExportJavaFiles(true);
-		jarPackage.setRefactoringAware(false);
-		jarPackage.setUseSourceFolderHierarchy(true);
-		jarPackage.setSaveDescription(false);
-		jarPackage.setDescriptionLocation(new Path(""));
-		jarPackage.setCompress(true);
-		jarPackage.setIncludeDirectoryEntries(true);
-		jarPackage.setOverwrite(true);
-		// Should be already built be the previous builders in the chain
-		jarPackage.setBuildIfNeeded(false);
-
-		File tmpFile = null;
+	private File copyToTemporaryFile(final File jarFile) throws CoreException {
 		try {
-			final String filename = (getProject().getName() != null ? getProject().getName() : Utils.BUILDER_ID);
-			tmpFile = File.createTempFile(filename + "-", ".jar");
+			final File tmpFile = File.createTempFile(getProject().getName() + "-", ".jar");
+			Files.copy(jarFile.toPath(), tmpFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			// Deleted upon exit like an exported jar file
+			tmpFile.deleteOnExit();
+			return tmpFile;
 		} catch (IOException e) {
-			final String errorMessage = String.format("%s project %s: could not create temporary jar file!", Utils.BUILDER_ID, getProject().getName());
-			throw Utils.createCoreException(errorMessage, e);
-		}
-		final IPath jarPath = Path.fromOSString(tmpFile.getAbsolutePath());
-
-		jarPackage.setJarLocation(jarPath);
-
-		final IJarExportRunnable jarFileExportOperation = jarPackage.createJarExportRunnable(null);
-		try {
-			jarFileExportOperation.run(monitor);
-		} catch (InvocationTargetException e) {
-			final String errorMessage = String.format("%s project %s: jar file export failed!", Utils.BUILDER_ID, getProject().getName());
-			throw Utils.createCoreException(errorMessage, e);
-		} catch (InterruptedException e) {
-			// Restore interrupted state
-			Thread.currentThread().interrupt();
-			final String errorMessage = String.format("%s project %s: jar file export interrupted!", Utils.BUILDER_ID, getProject().getName());
-			throw Utils.createCoreException(errorMessage, e);
+			throw Utils.createCoreException(String.format("%s project %s: could not copy cached bundle %s!", Utils.BUILDER_ID, getProject().getName(), jarFile.getAbsolutePath()), e);
 		}
-		return Optional.of(jarPackage.getJarLocation().toFile());
 	}
 
-	/**
-	 * Filters over all project resources and excludes files and directories
-	 * mentioned in {@link #EXCLUDE_FILES} and {@link #EXCLUDE_DIRECTORIES}
-	 * respectively. Iteration is internally split up by java resources and non-java
-	 * resources. According to Eclipse source, the returned elements must be (a mix)
-	 * of type IJavaProject, IJavaElement, IResource, IFile, ..?
-	 * 
-	 * @return elements of type IJavaProject, IJavaElement, IResource, IFile,...
-	 * @throws JavaModelException by the call to get java or non-java project resources
-	 */
-	private Object[] retrieveSelectedElementsToExport() throws JavaModelException {
-		final Optional<IJavaProject> jprojectOpt = retrieveJavaProject();
-		if (!jprojectOpt.isPresent()) {
-			return new Object[0];
+	private void storeInBundleCache(final String fingerprint, final File jarFile) {
+		try {
+			BundleCache.store(fingerprint, jarFile, settings.getBundleCacheMaxBytes());
+		} catch (IOException e) {
+			// The cache is an optimisation only, the build itself succeeded
+			log(String.format("%s project %s: Could not store bundle in cache: %s", Utils.BUILDER_ID, getProject().getName(), e.getMessage()));
 		}
-
-		final Collection<Object> selectedElements = new LinkedHashSet<>();
-		// Gather java-specific resources
-		final Collection<IJavaElement> javaResources = collectJavaResources(jprojectOpt.get());
-		selectedElements.addAll(javaResources);
-
-		// Gather non-java specific resources
-		final Collection<Object> nonJavaResources = collectNonJavaResources(jprojectOpt.get());
-		selectedElements.addAll(nonJavaResources);
-
-		return selectedElements.toArray();
 	}
 
-	private Optional<IJavaProject> retrieveJavaProject() {
-		// Check if this project is even a Java project
-		IJavaProject jproject = null;
-		try {
-			if (getProject().hasNature(JavaCore.NATURE_ID)) {
-				jproject = JavaCore.create(getProject());
-			}
-		} catch (CoreException ex) {
-			final String errorMessage = String.format("%s cannot obtain nature of project %s: %s!", Utils.BUILDER_ID, getProject().getName(), ex.getMessage());
-			log(errorMessage);
-			return Optional.empty();
+	private void deployLibraries(final Settings deploySettings, final LibraryDeployer.WorkspaceBuildScope scope) throws CoreException {
+		if (!deploySettings.isDeployLibraries()) {
+			return;
 		}
-
-		if (jproject == null || !jproject.exists()) {
-			final String errorMessage = String.format("%s project %s is not a Java project (anymore)!", Utils.BUILDER_ID, getProject().getName());
-			log(errorMessage);
-			return Optional.empty();
+		final Optional<RepositoryPlugin> bndWorkspaceRepository = getBndWorkspaceRepository(deploySettings.getBndWorkspaceRepositoryName());
+		if (!bndWorkspaceRepository.isPresent()) {
+			return;
 		}
-		return Optional.ofNullable(jproject);
+		final Collection<File> libraries = LibraryDeployer.collectLibraries(JavaCore.create(getProject()), deploySettings.isIncludeTests());
+		log(String.format("%s project %s: Deploying libraries %s", Utils.BUILDER_ID, getProject().getName(), libraries));
+		LibraryDeployer.deploy(libraries, bndWorkspaceRepository.get(), scope, this::log);
 	}
 
-	private Collection<IJavaElement> collectJavaResources(final IJavaProject jproject) throws JavaModelException {
-		final IJavaElement[] projectChildren = jproject.getChildren();
-		if (projectChildren == null) {
-			return Collections.emptySet();
+	/**
+	 * Provide the current state of the project as live bundle in the {@link WorkspaceRepository}, which is registered
+	 * with the bnd workspace if not already done. Only done with the {@code live} deployment, otherwise the bundle
+	 * would be offered by both repositories.
+	 * 
+	 * @throws CoreException if the bnd workspace cannot be obtained
+	 */
+	private void updateWorkspaceRepository() throws CoreException {
+		if (settings.getDeployment() != Settings.Deployment.LIVE) {
+			WorkspaceRepository.getInstance().remove(getProject());
+			return;
 		}
-		final Collection<IJavaElement> selectedElements = new LinkedHashSet<>(projectChildren.length);
-		for (final IJavaElement javaElement : projectChildren) {
-			log(String.format("Project java element %s encountered", javaElement.getPath()));
-			selectedElements.add(javaElement);
+		final Optional<Workspace> bndWorkspaceOpt = getBndWorkspace();
+		if (!bndWorkspaceOpt.isPresent()) {
+			return;
 		}
-		return selectedElements;
+		WorkspaceRepository.register(bndWorkspaceOpt.get(), this::log);
+		WorkspaceRepository.getInstance().update(exporter, this::log);
 	}
 
-	private Collection<Object> collectNonJavaResources(final IJavaProject jproject) throws JavaModelException {
-		final Object[] projectNonJavaChildren = jproject.getNonJavaResources();
-		if (projectNonJavaChildren == null) {
-			return Collections.emptySet();
-		}
-		final Collection<Object> selectedElements = new LinkedHashSet<>(projectNonJavaChildren.length);
-		for (final Object nonJavaElement : projectNonJavaChildren) {
-			if (nonJavaElement instanceof IFile) {
-				final IFile nonJavaFile = (IFile) nonJavaElement;
-				log(String.format("Project non-java file %s encountered", nonJavaFile.getName()));
-				if (!excludeFiles.contains(nonJavaFile.getName())) {
-					selectedElements.add(nonJavaFile);
-				}
-			} else if (nonJavaElement instanceof IFolder) {
-				final IFolder nonJavaFolder = (IFolder) nonJavaElement;
-				log(String.format("Project non-java folder %s encountered", nonJavaFolder.getName()));
-				if (!excludeFolders.contains(nonJavaFolder.getName())) {
-					selectedElements.add(nonJavaFolder);
-				}
-			} else {
-				// We do not know what type it is and we do not actually care, just take it
-				selectedElements.add(nonJavaElement);
-			}
+	/**
+	 * Warn about test source folders sharing their output folder with main sources, as their compiled classes end up
+	 * in the bundle although tests are excluded. The markers are only replaced if the warnings changed.
+	 * 
+	 * @throws CoreException if the classpath cannot be read or the markers cannot be changed
+	 */
+	private void updateProblemMarkers() throws CoreException {
+		final Set<String> messages = exporter.getTestSourceFoldersSharingOutput().stream()
+				.map(path -> String.format("Test source folder %s shares its output folder with main sources, its classes are included in the bundle of project %s", path, getProject().getName()))
+				.collect(Collectors.toCollection(TreeSet::new));
+		final IMarker[] markers = getProject().findMarkers(Utils.PROBLEM_MARKER_ID, false, IResource.DEPTH_ZERO);
+		final Set<String> markerMessages = Stream.of(markers).map(marker -> marker.getAttribute(IMarker.MESSAGE, "")).collect(Collectors.toCollection(TreeSet::new));
+		if (messages.equals(markerMessages)) {
+			return;
+		}
+		getProject().deleteMarkers(Utils.PROBLEM_MARKER_ID, false, IResource.DEPTH_ZERO);
+		for (final String message : messages) {
+			log(String.format("%s: %s", Utils.BUILDER_ID, message));
+			final IMarker marker = getProject().createMarker(Utils.PROBLEM_MARKER_ID);
+			marker.setAttribute(IMarker.SEVERITY, IMarker.SEVERITY_WARNING);
+			marker.setAttribute(IMarker.MESSAGE, message);
 		}
-		return selectedElements;
 	}
 
-	private void copyJarFileIntoBndWorkspaceRepository(final File jarFile) throws CoreException {
+	private void copyJarFileIntoBndWorkspaceRepository(final File jarFile, final String repositoryName) throws CoreException {
 		// JAR file should have been created, copy it into the bndtools workspace repo
-		final Optional<RepositoryPlugin> bndWorkspaceRepository = getBndWorkspaceRepository();
+		final Optional<RepositoryPlugin> bndWorkspaceRepository = getBndWorkspaceRepository(repositoryName);
 		if (!bndWorkspaceRepository.isPresent()) {
 			return;
 		}
@@ -299,30 +344,49 @@ public final class Builder extends IncrementalProjectBuilder {
 		}
 	}
 
-	private Optional<RepositoryPlugin> getBndWorkspaceRepository() throws CoreException {
-		final File bndWorkspaceDirectory = getBndWorkspaceDirectory();
+	private Optional<RepositoryPlugin> getBndWorkspaceRepository(final String repositoryName) throws CoreException {
+		final Optional<Workspace> bndWorkspaceOpt = getBndWorkspace();
+		if (!bndWorkspaceOpt.isPresent()) {
+			return Optional.empty();
+		}
+		try {
+			// Prerequisite: bnd workspace repository with well-defined name must be present
+			final RepositoryPlugin bndWorkspaceRepository = bndWorkspaceOpt.get().getRepository(repositoryName);
+			if (bndWorkspaceRepository == null) {
+				throw Utils.createCoreException(String.format("%s project %s: bnd workspace repository '%s' could not be retrieved!", Utils.BUILDER_ID, getProject().getName(), repositoryName), null);
+			}
+			return Optional.ofNullable(bndWorkspaceRepository);
+		} catch (Exception e) {
+			throw Utils.createCoreException(String.format("%s project %s: could not obtain bnd workspace repository!", Utils.BUILDER_ID, getProject().getName()), e);
+		}
+	}
+
+	private Optional<Workspace> getBndWorkspace() throws CoreException {
+		final File bndWorkspaceDirectory = getBndWorkspaceDirectory(true);
 		if (bndWorkspaceDirectory == null) {
 			log(String.format("%s project %s: bnd workspace directory could not be determined!", Utils.BUILDER_ID, getProject().getName()));
 			return Optional.empty();
 		}
 		try {
-			final Workspace bndWorkspace = Workspace.getWorkspace(bndWorkspaceDirectory);
+			final Workspace bndWorkspace = getBndWorkspace(bndWorkspaceDirectory);
 			if (bndWorkspace == null) {
 				log(String.format("%s project %s: bnd workspace could not be retrieved!", Utils.BUILDER_ID, getProject().getName()));
 				return Optional.empty();
 			}
-			// Prerequisite: bnd workspace repository with well-defined name must be present
-			final RepositoryPlugin bndWorkspaceRepository = bndWorkspace.getRepository(bndWorkspaceRepositoryName);
-			if (bndWorkspaceRepository == null) {
-				throw Utils.createCoreException(String.format("%s project %s: bnd workspace repository '%s' could not be retrieved!", Utils.BUILDER_ID, getProject().getName(), bndWorkspaceRepositoryName), null);
-			}
-			return Optional.ofNullable(bndWorkspaceRepository);
+			return Optional.of(bndWorkspace);
 		} catch (Exception e) {
-			throw Utils.createCoreException(String.format("%s project %s: could not obtain bnd workspace repository!", Utils.BUILDER_ID, getProject().getName()), e);
+			throw Utils.createCoreException(String.format("%s project %s: could not obtain bnd workspace!", Utils.BUILDER_ID, getProject().getName()), e);
 		}
 	}
 
-	private static File getBndWorkspaceDirectory() throws CoreException {
+	/**
+	 * Determine the bnd workspace directory from the location of the cnf project.
+	 * 
+	 * @param openCnfProject {@code true} to open a closed cnf project, {@code false} to treat it as missing
+	 * @return the bnd workspace directory, or {@code null} if there is no (open) cnf project
+	 * @throws CoreException if the cnf project cannot be opened
+	 */
+	static File getBndWorkspaceDirectory(final boolean openCnfProject) throws CoreException {
 		final IWorkspaceRoot eclipseWorkspace = ResourcesPlugin.getWorkspace().getRoot();
 		IProject cnfProject = eclipseWorkspace.getProject(Workspace.BNDDIR);
 		if (!cnfProject.exists()) {
@@ -330,6 +394,9 @@ public final class Builder extends IncrementalProjectBuilder {
 		}
 		if (cnfProject.exists()) {
 			if (!cnfProject.isOpen()) {
+				if (!openCnfProject) {
+					return null;
+				}
 				cnfProject.open(null);
 			}
 			return cnfProject.getLocation().toFile().getParentFile();
@@ -337,39 +404,66 @@ public final class Builder extends IncrementalProjectBuilder {
 		return null;
 	}
 
-	private void readFilesAndFoldersToExclude() throws CoreException {
-		if (this.excludeFolders != null && this.excludeFiles != null) {
+	/**
+	 * Get the bnd workspace of the given directory, preferably the instance bndtools resolves against, which bndtools
+	 * registers as OSGi service. Without bndtools, or before bndtools has set up its workspace, the instance shared by
+	 * bndlib is used.
+	 * 
+	 * @param bndWorkspaceDirectory the bnd workspace directory
+	 * @return the bnd workspace
+	 * @throws Exception if the bnd workspace cannot be created
+	 */
+	static Workspace getBndWorkspace(final File bndWorkspaceDirectory) throws Exception {
+		final Bundle bundle = FrameworkUtil.getBundle(Builder.class);
+		final BundleContext context = bundle != null ? bundle.getBundleContext() : null;
+		final ServiceReference<Workspace> reference = context != null ? context.getServiceReference(Workspace.class) : null;
+		if (reference != null) {
+			try {
+				final Workspace bndWorkspace = context.getService(reference);
+				if (bndWorkspace != null && isBndWorkspaceOf(bndWorkspace, bndWorkspaceDirectory)) {
+					return bndWorkspace;
+				}
+			} finally {
+				// The instance is kept by bndtools, it stays valid after ungetting the service
+				context.ungetService(reference);
+			}
+		}
+		return Workspace.getWorkspace(bndWorkspaceDirectory);
+	}
+
+	static boolean isBndWorkspaceOf(final Workspace bndWorkspace, final File bndWorkspaceDirectory) {
+		return bndWorkspace.getBase() != null && bndWorkspace.getBase().getAbsoluteFile().equals(bndWorkspaceDirectory.getAbsoluteFile());
+	}
+
+	private void readSettings(final Map<String, String> arguments) throws CoreException {
+		// Cached, so cheap unless the builder arguments or project preferences changed since the previous build
+		final Settings currentSettings = Settings.get(getProject(), arguments);
+		if (currentSettings == this.settings) {
 			return;
 		}
-		try (	final InputStream input = getClass().getClassLoader().getResourceAsStream(Utils.BUILDER_PROPERTIES_LOCATION);
-				final Reader reader = new InputStreamReader(input, StandardCharsets.UTF_8)) {
-			final Properties properties = new Properties();
-			properties.load(reader);
-			final String excludeFoldersProperty = properties.getProperty("exclude_folders");
-			final String excludeFilesProperty = properties.getProperty("exclude_files");
-			final String bndWorkspaceRepositoryProperty = properties.getProperty("bnd_workspace_repository");
-			if (excludeFoldersProperty == null || excludeFilesProperty == null
-					|| bndWorkspaceRepositoryProperty == null) {
-				// Wrap into CoreException
-				final String message = String.format("Could not read properties file %s values!", Utils.BUILDER_PROPERTIES_LOCATION);
-				throw Utils.createCoreException(message, null);
-			}
-			this.bndWorkspaceRepositoryName = bndWorkspaceRepositoryProperty.trim();
-			log(String.format("Bnd workspace repository to use=%s", this.bndWorkspaceRepositoryName));
-			final String[] excludeFoldersArr = excludeFoldersProperty.split(",");
-			final String[] excludeFilesArr = excludeFilesProperty.split(",");
-			log("Exclude folders=" + Arrays.toString(excludeFoldersArr));
-			log("Exclude files=" + Arrays.toString(excludeFilesArr));
-			this.excludeFolders = Arrays.asList(excludeFoldersArr);
-			this.excludeFiles = Arrays.asList(excludeFilesArr);
-		} catch (IOException e) {
-			// Wrap into CoreException
-			final String message = String.format("Could not read properties file %s!", Utils.BUILDER_PROPERTIES_LOCATION);
-			throw Utils.createCoreException(message, e);
+		this.settings = currentSettings;
+		this.exporter = new BundleExporter(getProject(), this.settings, this::log);
+		this.lastDeployedFingerprint = null;
+		log(String.format("Settings of project %s=%s", getProject().getName(), this.settings));
+	}
+
+	/**
+	 * Report the metrics of a finished build to the builder console and, if enabled by the settings, to the Eclipse
+	 * error log. Latency budgets are asserted by the performance tests of the {@code de.janhendriks.java2bnd.tests}
+	 * fragment, not at runtime.
+	 * 
+	 * @param metrics metrics of the finished build
+	 */
+	private void reportMetrics(final BuildMetrics metrics) {
+		final String message = String.format("%s project %s: %s", Utils.BUILDER_ID, getProject().getName(), metrics);
+		log(message);
+		if (settings != null && settings.isReportMetrics()) {
+			Utils.logInfo(message);
 		}
 	}
 
-	private void log(final String message) {
+	// Synchronized, asynchronous deployments log from their job
+	private synchronized void log(final String message) {
 		if (!Utils.DEBUG_OUTPUT) {
 			return;
 		}
@@ -381,7 +475,7 @@ public final class Builder extends IncrementalProjectBuilder {
 	}
 
 	@Override
-	protected void clean(IProgressMonitor monitor) {
+	protected synchronized void clean(IProgressMonitor monitor) {
 		if (this.consoleStream != null) {
 			try {
 				this.consoleStream.close();
@@ -0,0 +1,88 @@
+package de.janhendriks.java2bnd;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Optional;
+
+/**
+ * Content-addressed cache of exported bundles in the plugin state location, keyed by the fingerprint of the export
+ * inputs (see {@link BundleExporter#fingerprint()}). Switching back and forth between e.g. git branches thus only costs
+ * a cache lookup instead of a full export. The cache is limited in size, least recently used bundles are evicted first.
+ */
+final class BundleCache {
+
+	private static final String CACHE_FOLDER = "bundle-cache";
+	private static final String JAR_EXTENSION = ".jar";
+
+	private BundleCache() {
+		throw new IllegalAccessError("Cannot instantiate " + this.getClass().getName());
+	}
+
+	/**
+	 * Look up the cached bundle with the given fingerprint and mark it as recently used.
+	 *
+	 * @param fingerprint fingerprint of the export inputs
+	 * @return optional containing the cached bundle or empty optional if not cached
+	 */
+	static synchronized Optional<File> lookup(final String fingerprint) {
+		final File cachedFile = new File(getCacheFolder(), fingerprint + JAR_EXTENSION);
+		if (!cachedFile.isFile()) {
+			return Optional.empty();
+		}
+		// The modification time serves as last access time for the LRU eviction
+		cachedFile.setLastModified(System.currentTimeMillis());
+		return Optional.of(cachedFile);
+	}
+
+	/**
+	 * Store a copy of the given bundle under the given fingerprint and evict least recently used bundles exceeding
+	 * the given size limit.
+	 *
+	 * @param fingerprint fingerprint of the export inputs
+	 * @param jarFile exported bundle, remains untouched
+	 * @param maxBytes maximum total size of the cache in bytes
+	 * @throws IOException if the bundle cannot be copied into the cache
+	 */
+	static synchronized void store(final String fingerprint, final File jarFile, final long maxBytes) throws IOException {
+		if (jarFile.length() > maxBytes) {
+			return;
+		}
+		final File cacheFolder = getCacheFolder();
+		Files.createDirectories(cacheFolder.toPath());
+		final File cachedFile = new File(cacheFolder, fingerprint + JAR_EXTENSION);
+		// Copy under a temporary name first, so that a lookup never sees a partially written bundle
+		final File partialFile = File.createTempFile(fingerprint + "-", ".partial", cacheFolder);
+		try {
+			Files.copy(jarFile.toPath(), partialFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			Files.move(partialFile.toPath(), cachedFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			partialFile.delete();
+		}
+		evict(cacheFolder, maxBytes);
+	}
+
+	private static void evict(final File cacheFolder, final long maxBytes) {
+		final File[] cachedFiles = cacheFolder.listFiles((folder, name) -> name.endsWith(JAR_EXTENSION));
+		if (cachedFiles == null) {
+			return;
+		}
+		long totalBytes = Arrays.stream(cachedFiles).mapToLong(File::length).sum();
+		// Oldest access first
+		Arrays.sort(cachedFiles, Comparator.comparingLong(File::lastModified));
+		for (int i = 0; i < cachedFiles.length && totalBytes > maxBytes; i++) {
+			final long length = cachedFiles[i].length();
+			if (cachedFiles[i].delete()) {
+				totalBytes -= length;
+			}
+		}
+	}
+
+	private static File getCacheFolder() {
+		return Utils.getStateLocation().resolve(CACHE_FOLDER).toFile();
+	}
+
+}
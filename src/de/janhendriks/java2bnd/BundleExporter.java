@@ -0,0 +1,549 @@
+package de.janhendriks.java2bnd;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+
+import org.eclipse.core.resources.IContainer;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IFolder;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.jdt.core.IClasspathEntry;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IPackageFragmentRoot;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.JavaModelException;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.FrameworkUtil;
+
+/**
+ * Exporter zipping the compiled build artifacts and resources of a Java project into a temporary JAR bundle file,
+ * streaming them directly into a {@link BundleWriter}. It is used by the {@link Builder} on each full build and by the
+ * {@link WorkspaceRepository} to materialise a bundle on demand.
+ */
+final class BundleExporter {
+
+	// Progress ticks remaining at any time, the number of files to export is not known in advance
+	private static final int PROGRESS_TICKS = 1000;
+	// Number of exported entries between two samples of the heap usage
+	private static final int HEAP_SAMPLE_INTERVAL = 256;
+	// Version of the bundle layout written by the export, to be increased whenever the layout changes
+	private static final int LAYOUT_VERSION = 3;
+
+	/**
+	 * Functional interface to consume the elements to export one by one.
+	 */
+	@FunctionalInterface
+	private interface ElementConsumer {
+		void accept(Object element) throws CoreException, IOException;
+	}
+
+	private final IProject project;
+	private final Settings settings;
+	private final Consumer<String> logger;
+	// Content hashes of the files hashed by the previous fingerprint, by their full path
+	private Map<IPath, KnownHash> knownHashes = new HashMap<>();
+
+	BundleExporter(final IProject project, final Settings settings, final Consumer<String> logger) {
+		this.project = requireNonNull(project, "Project must not be null!");
+		this.settings = requireNonNull(settings, "Settings must not be null!");
+		this.logger = requireNonNull(logger, "Logger must not be null!");
+	}
+
+	IProject getProject() {
+		return project;
+	}
+
+	/**
+	 * Export the project into a temporary jar file, using the project manifest. The elements to export are visited
+	 * lazily and their files are streamed into the jar file, so that the memory needed for the files is bounded by the
+	 * {@link BundleWriter}. The memory still grows with the number of directories in the bundle, as the names of the
+	 * written directories are kept to avoid duplicate directory entries.
+	 * 
+	 * @param monitor progress monitor, may be {@code null}
+	 * @param metrics metrics of the current build to sample the heap usage into, may be {@code null}
+	 * @return optional containing the temporary jar file or empty optional if the project cannot or need not be exported
+	 * @throws CoreException if the jar file could not be created
+	 */
+	Optional<File> export(final IProgressMonitor monitor, final BuildMetrics metrics) throws CoreException {
+		// Skip this project and display / log a hint that the builder could not proceed
+		final Optional<IPath> manifestLocationOpt = Utils.getManifestLocation(project);
+		if (!manifestLocationOpt.isPresent()) {
+			final String errorMessage = String.format("%s project %s: %s file not found, skipping project!", Utils.BUILDER_ID, project.getName(), Utils.MANIFEST_LOCATION);
+			log(errorMessage);
+			return Optional.empty();
+		}
+		final Optional<IJavaProject> jprojectOpt = retrieveJavaProject();
+		if (!jprojectOpt.isPresent()) {
+			log(String.format("%s project %s: Nothing to export", Utils.BUILDER_ID, project.getName()));
+			return Optional.empty();
+		}
+
+		File tmpFile = null;
+		try {
+			final String filename = (project.getName() != null ? project.getName() : Utils.BUILDER_ID);
+			tmpFile = File.createTempFile(filename + "-", ".jar");
+		} catch (IOException e) {
+			final String errorMessage = String.format("%s project %s: could not create temporary jar file!", Utils.BUILDER_ID, project.getName());
+			throw Utils.createCoreException(errorMessage, e);
+		}
+
+		log(String.format("Exporting %s into %s with %s", project.getName(), tmpFile.getAbsolutePath(), settings.getCompressionPolicy()));
+		try (final BundleWriter writer = new BundleWriter(tmpFile, settings.getCompressionPolicy())) {
+			final EntryStream entryStream = new EntryStream(writer, SubMonitor.convert(monitor, PROGRESS_TICKS), metrics);
+			entryStream.sampleHeap();
+			entryStream.addManifest(project.getWorkspace().getRoot().findMember(manifestLocationOpt.get()));
+			forEachElementToExport(jprojectOpt.get(), entryStream::addElement);
+			entryStream.sampleHeap();
+		} catch (IOException e) {
+			tmpFile.delete();
+			final String errorMessage = String.format("%s project %s: jar file export failed!", Utils.BUILDER_ID, project.getName());
+			throw Utils.createCoreException(errorMessage, e);
+		} catch (CoreException | RuntimeException e) {
+			// Also covers the cancellation of the export
+			tmpFile.delete();
+			throw e;
+		}
+		return Optional.of(tmpFile);
+	}
+
+	/**
+	 * Compute a fingerprint of all inputs of the export, i.e. the content of the manifest and of every exported file
+	 * including its path, as well as the settings affecting the bundle content and the version of the bundle layout and
+	 * of this plugin. Equal fingerprints yield equal bundles. Files unchanged since the previous fingerprint, according
+	 * to their modification stamp and local time stamp, are not read again.
+	 * 
+	 * @return optional containing the hexadecimal fingerprint or empty optional if the project cannot be exported
+	 * @throws CoreException if a resource cannot be read
+	 */
+	synchronized Optional<String> fingerprint() throws CoreException {
+		final Optional<IPath> manifestLocationOpt = Utils.getManifestLocation(project);
+		if (!manifestLocationOpt.isPresent()) {
+			return Optional.empty();
+		}
+		final Optional<IJavaProject> jprojectOpt = retrieveJavaProject();
+		if (!jprojectOpt.isPresent()) {
+			return Optional.empty();
+		}
+		final MessageDigest digest = Utils.newSha256Digest();
+		hashString(digest, String.format("%d|%s", LAYOUT_VERSION, getPluginVersion()));
+		hashString(digest, settings.getExportFingerprint());
+		// Only the files hashed by this fingerprint are kept, so that deleted files do not pile up
+		final Map<IPath, KnownHash> previousHashes = knownHashes;
+		knownHashes = new HashMap<>();
+		final IWorkspaceRoot workspaceRoot = project.getWorkspace().getRoot();
+		hashResource(digest, workspaceRoot.findMember(manifestLocationOpt.get()), previousHashes);
+		final IJavaProject jproject = jprojectOpt.get();
+		try {
+			forEachElementToExport(jproject, exportElement -> {
+				if (exportElement instanceof IJavaElement) {
+					final IJavaElement javaElement = (IJavaElement) exportElement;
+					final Optional<IClasspathEntry> sourceEntryOpt = getSourceClasspathEntry(javaElement);
+					if (sourceEntryOpt.isPresent()) {
+						// Class files and resources are exported from the output folder of the source folder
+						final IPath outputLocation = sourceEntryOpt.get().getOutputLocation();
+						hashResource(digest, workspaceRoot.findMember(outputLocation != null ? outputLocation : jproject.getOutputLocation()), previousHashes);
+					}
+					if ((sourceEntryOpt.isPresent() && !settings.isIncludeSources()) || isArchive(javaElement)) {
+						// Java source files and archives are not exported, the output folder covers all other content of the source folder
+						return;
+					}
+					if (javaElement.getResource() != null) {
+						hashResource(digest, javaElement.getResource(), previousHashes);
+					} else {
+						// External element, e.g. an archive outside of the workspace
+						hashString(digest, javaElement.getPath().toPortableString());
+					}
+				} else if (exportElement instanceof IResource) {
+					hashResource(digest, (IResource) exportElement, previousHashes);
+				}
+			});
+		} catch (IOException e) {
+			throw Utils.createCoreException(String.format("%s project %s: could not compute fingerprint!", Utils.BUILDER_ID, project.getName()), e);
+		}
+		return Optional.of(Utils.toHex(digest.digest()));
+	}
+
+	private void hashResource(final MessageDigest digest, final IResource resource, final Map<IPath, KnownHash> previousHashes) throws CoreException {
+		if (resource == null || !resource.exists()) {
+			return;
+		}
+		hashString(digest, resource.getFullPath().toPortableString());
+		if (resource instanceof IFile) {
+			hashString(digest, hashFile((IFile) resource, previousHashes));
+		} else if (resource instanceof IContainer) {
+			// Sorted, so that the fingerprint does not depend on the order of the members
+			final IResource[] members = ((IContainer) resource).members();
+			Arrays.sort(members, Comparator.comparing(IResource::getName));
+			for (final IResource member : members) {
+				hashResource(digest, member, previousHashes);
+			}
+		}
+	}
+
+	private String hashFile(final IFile file, final Map<IPath, KnownHash> previousHashes) throws CoreException {
+		final long modificationStamp = file.getModificationStamp();
+		final long localTimeStamp = file.getLocalTimeStamp();
+		final KnownHash knownHash = previousHashes.get(file.getFullPath());
+		if (knownHash != null && knownHash.modificationStamp == modificationStamp && knownHash.localTimeStamp == localTimeStamp) {
+			knownHashes.put(file.getFullPath(), knownHash);
+			return knownHash.hash;
+		}
+		final MessageDigest fileDigest = Utils.newSha256Digest();
+		try (final InputStream input = file.getContents(true)) {
+			Utils.updateDigest(fileDigest, input);
+		} catch (IOException e) {
+			throw Utils.createCoreException(String.format("%s: could not read %s!", Utils.BUILDER_ID, file.getFullPath()), e);
+		}
+		final String hash = Utils.toHex(fileDigest.digest());
+		knownHashes.put(file.getFullPath(), new KnownHash(modificationStamp, localTimeStamp, hash));
+		return hash;
+	}
+
+	private static String getPluginVersion() {
+		final Bundle bundle = FrameworkUtil.getBundle(BundleExporter.class);
+		return bundle != null ? bundle.getVersion().toString() : "";
+	}
+
+	private static void hashString(final MessageDigest digest, final String value) {
+		digest.update(value.getBytes(StandardCharsets.UTF_8));
+		// Separator, so that consecutive values cannot be confused
+		digest.update((byte) 0);
+	}
+
+	/**
+	 * Filters over all project resources and excludes files and directories
+	 * mentioned in {@link Settings#EXCLUDE_FILES} and {@link Settings#EXCLUDE_FOLDERS}
+	 * respectively, as well as test source folders and their output folders unless
+	 * {@link Settings#INCLUDE_TESTS} is set. Iteration is internally split up by java
+	 * resources and non-java resources. The selected elements are passed to the given
+	 * consumer one by one instead of being collected, they are (a mix) of type
+	 * IJavaElement, IResource, IFile, ...
+	 * 
+	 * @param jproject Java project to export
+	 * @param consumer consumer of the elements of type IJavaElement, IResource, IFile,...
+	 * @throws CoreException by the call to get java or non-java project resources or by the consumer
+	 * @throws IOException by the consumer
+	 */
+	private void forEachElementToExport(final IJavaProject jproject, final ElementConsumer consumer) throws CoreException, IOException {
+		// Visit java-specific resources, the output folders of excluded test source folders are never visited
+		forEachJavaResource(jproject, consumer);
+
+		// Visit non-java specific resources
+		forEachNonJavaResource(jproject, consumer);
+	}
+
+	/**
+	 * Get the test source folders whose compiled classes end up in an output folder of main sources, so that they
+	 * cannot be excluded from the bundle.
+	 * 
+	 * @return paths of the test source folders sharing an output folder, empty if {@link Settings#INCLUDE_TESTS} is set
+	 * @throws JavaModelException if the classpath of the project cannot be read
+	 */
+	Collection<IPath> getTestSourceFoldersSharingOutput() throws JavaModelException {
+		final IJavaProject jproject = JavaCore.create(project);
+		if (settings.isIncludeTests() || jproject == null || !jproject.exists()) {
+			return Collections.emptyList();
+		}
+		final Collection<IPath> mainOutputLocations = new HashSet<>();
+		final Map<IPath, IPath> testOutputLocations = new LinkedHashMap<>();
+		for (final IClasspathEntry entry : jproject.getRawClasspath()) {
+			if (entry.getEntryKind() != IClasspathEntry.CPE_SOURCE) {
+				continue;
+			}
+			final IPath outputLocation = entry.getOutputLocation() != null ? entry.getOutputLocation() : jproject.getOutputLocation();
+			if (entry.isTest()) {
+				testOutputLocations.put(entry.getPath(), outputLocation);
+			} else {
+				mainOutputLocations.add(outputLocation);
+			}
+		}
+		return testOutputLocations.entrySet().stream().filter(entry -> mainOutputLocations.contains(entry.getValue()))
+				.map(Map.Entry::getKey).collect(Collectors.toList());
+	}
+
+	private Optional<IJavaProject> retrieveJavaProject() {
+		// Check if this project is even a Java project
+		IJavaProject jproject = null;
+		try {
+			if (project.hasNature(JavaCore.NATURE_ID)) {
+				jproject = JavaCore.create(project);
+			}
+		} catch (CoreException ex) {
+			final String errorMessage = String.format("%s cannot obtain nature of project %s: %s!", Utils.BUILDER_ID, project.getName(), ex.getMessage());
+			log(errorMessage);
+			return Optional.empty();
+		}
+
+		if (jproject == null || !jproject.exists()) {
+			final String errorMessage = String.format("%s project %s is not a Java project (anymore)!", Utils.BUILDER_ID, project.getName());
+			log(errorMessage);
+			return Optional.empty();
+		}
+		return Optional.ofNullable(jproject);
+	}
+
+	private void forEachJavaResource(final IJavaProject jproject, final ElementConsumer consumer) throws CoreException, IOException {
+		final IJavaElement[] projectChildren = jproject.getChildren();
+		if (projectChildren == null) {
+			return;
+		}
+		for (final IJavaElement javaElement : projectChildren) {
+			log(String.format("Project java element %s encountered", javaElement.getPath()));
+			final Optional<IClasspathEntry> sourceEntryOpt = getSourceClasspathEntry(javaElement);
+			if (settings.isIncludeTests() || !sourceEntryOpt.isPresent() || !sourceEntryOpt.get().isTest()) {
+				consumer.accept(javaElement);
+			} else {
+				log(String.format("Project test source folder %s excluded", javaElement.getPath()));
+			}
+		}
+	}
+
+	/**
+	 * Archives on the classpath, e.g. {@code lib/*.jar}, are never exported, as by the Eclipse JAR exporter.
+	 */
+	private static boolean isArchive(final IJavaElement javaElement) {
+		return javaElement instanceof IPackageFragmentRoot && ((IPackageFragmentRoot) javaElement).isArchive();
+	}
+
+	private static Optional<IClasspathEntry> getSourceClasspathEntry(final IJavaElement javaElement) throws JavaModelException {
+		if (!(javaElement instanceof IPackageFragmentRoot)) {
+			return Optional.empty();
+		}
+		final IPackageFragmentRoot packageFragmentRoot = (IPackageFragmentRoot) javaElement;
+		if (packageFragmentRoot.getKind() != IPackageFragmentRoot.K_SOURCE) {
+			return Optional.empty();
+		}
+		return Optional.ofNullable(packageFragmentRoot.getRawClasspathEntry());
+	}
+
+	private void forEachNonJavaResource(final IJavaProject jproject, final ElementConsumer consumer) throws CoreException, IOException {
+		final Object[] projectNonJavaChildren = jproject.getNonJavaResources();
+		if (projectNonJavaChildren == null) {
+			return;
+		}
+		for (final Object nonJavaElement : projectNonJavaChildren) {
+			if (nonJavaElement instanceof IFile) {
+				final IFile nonJavaFile = (IFile) nonJavaElement;
+				log(String.format("Project non-java file %s encountered", nonJavaFile.getName()));
+				if (!settings.getExcludeFiles().contains(nonJavaFile.getName())) {
+					consumer.accept(nonJavaFile);
+				}
+			} else if (nonJavaElement instanceof IFolder) {
+				final IFolder nonJavaFolder = (IFolder) nonJavaElement;
+				log(String.format("Project non-java folder %s encountered", nonJavaFolder.getName()));
+				if (!settings.getExcludeFolders().contains(nonJavaFolder.getName())) {
+					consumer.accept(nonJavaFolder);
+				}
+			} else {
+				// We do not know what type it is and we do not actually care, just take it
+				consumer.accept(nonJavaElement);
+			}
+		}
+	}
+
+	private void log(final String message) {
+		logger.accept(message);
+	}
+
+	/**
+	 * Streams the files of the elements to export into a {@link BundleWriter}, laid out like the Eclipse JAR exporter
+	 * does: the manifest first, then the content of the output folders and class folders at the root of the bundle and
+	 * all other resources at their project-relative path, skipping archives on the classpath. The names of all written
+	 * directories and the exported output folders are kept, which grow with the number of directories and of output
+	 * folders of the project. Files exported from an earlier output folder are detected by looking them up in the
+	 * workspace instead, so nothing is kept per file.
+	 */
+	private final class EntryStream {
+		private final BundleWriter writer;
+		private final SubMonitor progress;
+		private final BuildMetrics metrics;
+		private final Set<String> writtenDirectories = new HashSet<>();
+		private final List<IContainer> exportedOutputFolders = new ArrayList<>();
+		private final IJavaProject jproject = JavaCore.create(project);
+		private final long directoryTime = getTime(System.currentTimeMillis());
+		private int writtenEntries;
+
+		private EntryStream(final BundleWriter writer, final SubMonitor progress, final BuildMetrics metrics) {
+			this.writer = writer;
+			this.progress = progress;
+			this.metrics = metrics;
+		}
+
+		private void addManifest(final IResource manifest) throws CoreException, IOException {
+			if (!(manifest instanceof IFile)) {
+				throw Utils.createCoreException(String.format("%s project %s: %s is no file!", Utils.BUILDER_ID, project.getName(), Utils.MANIFEST_LOCATION), null);
+			}
+			// Normalised like the Eclipse JAR exporter did, i.e. parsed and written again with CRLF line endings
+			final ByteArrayOutputStream content = new ByteArrayOutputStream();
+			try (final InputStream input = ((IFile) manifest).getContents(true)) {
+				new Manifest(input).write(content);
+			}
+			addParentDirectories(Utils.MANIFEST_LOCATION);
+			addEntry(Utils.MANIFEST_LOCATION, manifest.getLocalTimeStamp(), () -> new ByteArrayInputStream(content.toByteArray()));
+		}
+
+		private void addElement(final Object element) throws CoreException, IOException {
+			if (element instanceof IJavaElement) {
+				final IJavaElement javaElement = (IJavaElement) element;
+				final Optional<IClasspathEntry> sourceEntryOpt = getSourceClasspathEntry(javaElement);
+				if (sourceEntryOpt.isPresent()) {
+					addOutputFolder(sourceEntryOpt.get().getOutputLocation() != null ? sourceEntryOpt.get().getOutputLocation() : jproject.getOutputLocation());
+					if (settings.isIncludeSources() && javaElement.getResource() != null) {
+						addResource(javaElement.getResource(), true);
+					}
+				} else if (isArchive(javaElement)) {
+					log(String.format("Archive %s not exported", javaElement.getPath()));
+				} else if (javaElement instanceof IPackageFragmentRoot && javaElement.getResource() instanceof IContainer) {
+					// Class folder, its content is placed at the root of the bundle like the content of an output folder
+					addOutputFolder(javaElement.getResource().getFullPath());
+				} else if (javaElement.getResource() != null) {
+					addResource(javaElement.getResource(), false);
+				} else {
+					log(String.format("External element %s not exported", javaElement.getPath()));
+				}
+			} else if (element instanceof IResource) {
+				addResource((IResource) element, false);
+			} else {
+				log(String.format("Element %s of unknown type not exported", element));
+			}
+		}
+
+		private void addOutputFolder(final IPath outputLocation) throws CoreException, IOException {
+			final IResource outputFolder = project.getWorkspace().getRoot().findMember(outputLocation);
+			if (!(outputFolder instanceof IContainer) || exportedOutputFolders.contains(outputFolder)) {
+				// Missing or already exported for another source folder
+				return;
+			}
+			// The content of output folders is placed at the root of the bundle
+			addMembers((IContainer) outputFolder, "", false);
+			exportedOutputFolders.add((IContainer) outputFolder);
+		}
+
+		private void addResource(final IResource resource, final boolean javaFilesOnly) throws CoreException, IOException {
+			final String name = resource.getProjectRelativePath().toPortableString();
+			addParentDirectories(name);
+			if (resource instanceof IFile) {
+				addFile(name, (IFile) resource);
+			} else if (resource instanceof IContainer) {
+				addDirectory(name + "/");
+				addMembers((IContainer) resource, name + "/", javaFilesOnly);
+			}
+		}
+
+		private void addMembers(final IContainer container, final String prefix, final boolean javaFilesOnly) throws CoreException, IOException {
+			// Sorted, so that the order of the entries does not depend on the file system
+			final IResource[] members = container.members();
+			Arrays.sort(members, Comparator.comparing(IResource::getName));
+			for (final IResource member : members) {
+				final String name = prefix + member.getName();
+				if (member instanceof IFile) {
+					if (!javaFilesOnly || "java".equals(member.getFileExtension())) {
+						addFile(name, (IFile) member);
+					}
+				} else if (member instanceof IContainer) {
+					addDirectory(name + "/");
+					addMembers((IContainer) member, name + "/", javaFilesOnly);
+				}
+			}
+		}
+
+		private void addParentDirectories(final String name) throws IOException {
+			for (int index = name.indexOf('/'); index != -1; index = name.indexOf('/', index + 1)) {
+				addDirectory(name.substring(0, index + 1));
+			}
+		}
+
+		private void addDirectory(final String name) throws IOException {
+			if (writtenDirectories.add(name)) {
+				writer.addDirectory(name, directoryTime);
+			}
+		}
+
+		private void addFile(final String name, final IFile file) throws IOException {
+			if ((writtenEntries > 0 && Utils.MANIFEST_LOCATION.equals(name)) || isExportedFromOutputFolder(name)) {
+				log(String.format("Duplicate entry %s from %s not exported", name, file.getFullPath()));
+				return;
+			}
+			addEntry(name, file.getLocalTimeStamp(), () -> {
+				try {
+					return file.getContents(true);
+				} catch (CoreException e) {
+					throw new IOException(String.format("Could not read %s", file.getFullPath()), e);
+				}
+			});
+		}
+
+		private void addEntry(final String name, final long time, final BundleWriter.EntryContent content) throws IOException {
+			writer.addEntry(name, getTime(time), content);
+			progress.setWorkRemaining(PROGRESS_TICKS).split(1);
+			if (++writtenEntries % HEAP_SAMPLE_INTERVAL == 0) {
+				sampleHeap();
+			}
+		}
+
+		private boolean isExportedFromOutputFolder(final String name) {
+			for (final IContainer outputFolder : exportedOutputFolders) {
+				final IResource member = outputFolder.findMember(name);
+				if (member != null && member.exists()) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private long getTime(final long time) {
+			return settings.isReproducible() ? BundleWriter.REPRODUCIBLE_TIME : time;
+		}
+
+		private void sampleHeap() {
+			if (metrics != null) {
+				metrics.sampleHeap();
+			}
+		}
+	}
+
+	/**
+	 * Content hash of a file, valid as long as the modification stamp and local time stamp of the file are unchanged.
+	 */
+	private static final class KnownHash {
+		private final long modificationStamp;
+		private final long localTimeStamp;
+		private final String hash;
+
+		private KnownHash(final long modificationStamp, final long localTimeStamp, final String hash) {
+			this.modificationStamp = modificationStamp;
+			this.localTimeStamp = localTimeStamp;
+			this.hash = hash;
+		}
+	}
+
+}
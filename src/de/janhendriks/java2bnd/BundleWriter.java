@@ -0,0 +1,509 @@
+package de.janhendriks.java2bnd;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipEntry;
+
+/**
+ * Writes bundle jar files entry by entry according to a {@link CompressionPolicy}.
+ * Once a bundle has more entries than the parallel threshold of the policy, the entries are compressed concurrently
+ * on all available cores, while they are still written to the file in the exact order they were added.
+ * The content of each entry is streamed through a {@link SpillBuffer}, which keeps small entries in memory and spills
+ * larger ones to a temporary file. The central directory is spooled to a temporary file, so the memory held by the
+ * writer is bounded by the entries in flight: up to {@value #PENDING_ENTRIES_PER_THREAD} entries per core waiting to be
+ * written of at most {@value #SPILL_THRESHOLD} bytes each, plus the deflated copy of the entries being compressed,
+ * i.e. about 1.25 MiB per core, independently of the size and the number of the entries.
+ */
+final class BundleWriter implements Closeable {
+
+	// Number of entries that may be compressed ahead of the entry currently written, per thread
+	private static final int PENDING_ENTRIES_PER_THREAD = 4;
+	private static final int BUFFER_SIZE = 64 * 1024;
+	// Entries up to this size are buffered in memory, larger ones are spilled to a temporary file
+	static final int SPILL_THRESHOLD = 256 * 1024;
+
+	private static final int LOCAL_FILE_HEADER_SIGNATURE = 0x04034b50;
+	private static final int CENTRAL_DIRECTORY_SIGNATURE = 0x02014b50;
+	private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+	private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06064b50;
+	private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIGNATURE = 0x07064b50;
+	private static final int VERSION_NEEDED = 20;
+	private static final int VERSION_NEEDED_ZIP64 = 45;
+	// General purpose flag bit 11: entry names are encoded in UTF-8
+	private static final int UTF8_FLAG = 0x0800;
+	private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+	private static final long ZIP64_MAGIC_SIZE = 0xFFFFFFFFL;
+	private static final int ZIP64_EXTRA_FIELD_ID = 0x0001;
+	// Timestamp of all entries of reproducible bundles, written as the earliest DOS date 1980-01-01 00:00 in any time zone
+	static final long REPRODUCIBLE_TIME = 0L;
+
+	private final CountingOutputStream out;
+	private final CompressionPolicy policy;
+	private final int parallelism;
+	// Central directory records of the written entries, appended to the bundle on close
+	private final File centralDirectoryFile;
+	private final CountingOutputStream centralDirectory;
+	private long writtenEntries;
+	private final Deque<Future<CompressedEntry>> pendingEntries = new ArrayDeque<>();
+	private ExecutorService executor;
+	private int addedEntries;
+
+	/**
+	 * Functional interface to open the content of an entry, it is invoked at most once per entry and possibly from a
+	 * different thread than the one adding the entry.
+	 */
+	@FunctionalInterface
+	interface EntryContent {
+		InputStream open() throws IOException;
+	}
+
+	BundleWriter(final File target, final CompressionPolicy policy) throws IOException {
+		this.policy = requireNonNull(policy, "Compression policy must not be null!");
+		this.out = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(target), BUFFER_SIZE));
+		this.parallelism = Runtime.getRuntime().availableProcessors();
+		try {
+			this.centralDirectoryFile = File.createTempFile(target.getName() + "-", ".cd");
+			this.centralDirectory = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(centralDirectoryFile), BUFFER_SIZE));
+		} catch (IOException e) {
+			out.close();
+			throw e;
+		}
+	}
+
+	void addDirectory(final String name, final long time) throws IOException {
+		final String directoryName = name.endsWith("/") ? name : name + "/";
+		enqueue(() -> new CompressedEntry(directoryName, time, ZipEntry.STORED, 0L, 0L, new SpillBuffer(SPILL_THRESHOLD)));
+	}
+
+	void addEntry(final String name, final long time, final EntryContent content) throws IOException {
+		requireNonNull(content, "Entry content must not be null!");
+		enqueue(() -> compress(name, time, content));
+	}
+
+	private void enqueue(final Callable<CompressedEntry> task) throws IOException {
+		addedEntries++;
+		if (executor == null && addedEntries >= policy.getParallelThreshold() && parallelism > 1) {
+			executor = Executors.newFixedThreadPool(parallelism);
+		}
+		if (executor == null) {
+			// Small bundle, compress on the calling thread, all previously added entries have already been written
+			try {
+				write(task.call());
+			} catch (IOException | RuntimeException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new IOException(e);
+			}
+			return;
+		}
+		pendingEntries.add(executor.submit(task));
+		while (pendingEntries.size() > parallelism * PENDING_ENTRIES_PER_THREAD) {
+			write(await(pendingEntries.poll()));
+		}
+	}
+
+	private CompressedEntry compress(final String name, final long time, final EntryContent content) throws IOException {
+		// The uncompressed size is only known once the content has been read, so it is buffered first
+		final SpillBuffer data = new SpillBuffer(SPILL_THRESHOLD);
+		final CRC32 crc = new CRC32();
+		try {
+			try (final InputStream input = content.open()) {
+				final byte[] buffer = new byte[BUFFER_SIZE];
+				int length;
+				while ((length = input.read(buffer)) != -1) {
+					crc.update(buffer, 0, length);
+					data.write(buffer, 0, length);
+				}
+			}
+			data.close();
+			if (!policy.shouldDeflate(name, data.size())) {
+				return new CompressedEntry(name, time, ZipEntry.STORED, crc.getValue(), data.size(), data);
+			}
+			final SpillBuffer compressed = deflate(data);
+			// Keep the deflated representation only if it actually saves space
+			if (compressed.size() < data.size()) {
+				data.delete();
+				return new CompressedEntry(name, time, ZipEntry.DEFLATED, crc.getValue(), data.size(), compressed);
+			}
+			compressed.delete();
+			return new CompressedEntry(name, time, ZipEntry.STORED, crc.getValue(), data.size(), data);
+		} catch (IOException | RuntimeException e) {
+			data.delete();
+			throw e;
+		}
+	}
+
+	private SpillBuffer deflate(final SpillBuffer data) throws IOException {
+		final SpillBuffer compressed = new SpillBuffer(SPILL_THRESHOLD);
+		final Deflater deflater = new Deflater(policy.getLevel(), true);
+		try (final DeflaterOutputStream deflaterOutput = new DeflaterOutputStream(compressed, deflater, BUFFER_SIZE)) {
+			data.writeTo(deflaterOutput);
+		} catch (IOException | RuntimeException e) {
+			compressed.delete();
+			throw e;
+		} finally {
+			deflater.end();
+		}
+		return compressed;
+	}
+
+	private static CompressedEntry await(final Future<CompressedEntry> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			// Restore interrupted state
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Bundle writing interrupted");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+	}
+
+	private void write(final CompressedEntry entry) throws IOException {
+		try {
+			writeEntry(entry);
+		} finally {
+			entry.data.delete();
+		}
+	}
+
+	private void writeEntry(final CompressedEntry entry) throws IOException {
+		final long dataLength = entry.data.size();
+		final long offset = out.getCount();
+		// Sizes and offset of 4 GiB or more are written to a ZIP64 extended information extra field instead
+		final boolean zip64Sizes = entry.size >= ZIP64_MAGIC_SIZE || dataLength >= ZIP64_MAGIC_SIZE;
+		final boolean zip64Offset = offset >= ZIP64_MAGIC_SIZE;
+		final byte[] nameBytes = entry.name.getBytes(StandardCharsets.UTF_8);
+		final int dosTime = toDosTime(entry.time);
+		writeInt(out, LOCAL_FILE_HEADER_SIGNATURE);
+		writeShort(out, zip64Sizes ? VERSION_NEEDED_ZIP64 : VERSION_NEEDED);
+		writeShort(out, UTF8_FLAG);
+		writeShort(out, entry.method);
+		writeInt(out, dosTime);
+		writeInt(out, entry.crc);
+		writeInt(out, zip64Sizes ? ZIP64_MAGIC_SIZE : dataLength);
+		writeInt(out, zip64Sizes ? ZIP64_MAGIC_SIZE : entry.size);
+		writeShort(out, nameBytes.length);
+		// The local extra field must contain both sizes if either of them is replaced by the magic value
+		writeShort(out, zip64Sizes ? 4 + 16 : 0);
+		out.write(nameBytes);
+		if (zip64Sizes) {
+			writeShort(out, ZIP64_EXTRA_FIELD_ID);
+			writeShort(out, 16);
+			writeLong(out, entry.size);
+			writeLong(out, dataLength);
+		}
+		entry.data.writeTo(out);
+
+		// The central extra field contains only the values replaced by the magic value, in this order
+		final int zip64ExtraLength = (zip64Sizes ? 16 : 0) + (zip64Offset ? 8 : 0);
+		final int versionNeeded = zip64ExtraLength > 0 ? VERSION_NEEDED_ZIP64 : VERSION_NEEDED;
+		writeInt(centralDirectory, CENTRAL_DIRECTORY_SIGNATURE);
+		writeShort(centralDirectory, versionNeeded);
+		writeShort(centralDirectory, versionNeeded);
+		writeShort(centralDirectory, UTF8_FLAG);
+		writeShort(centralDirectory, entry.method);
+		writeInt(centralDirectory, dosTime);
+		writeInt(centralDirectory, entry.crc);
+		writeInt(centralDirectory, zip64Sizes ? ZIP64_MAGIC_SIZE : dataLength);
+		writeInt(centralDirectory, zip64Sizes ? ZIP64_MAGIC_SIZE : entry.size);
+		writeShort(centralDirectory, nameBytes.length);
+		// Extra field, comment, disk number start, internal and external attributes
+		writeShort(centralDirectory, zip64ExtraLength > 0 ? 4 + zip64ExtraLength : 0);
+		writeShort(centralDirectory, 0);
+		writeShort(centralDirectory, 0);
+		writeShort(centralDirectory, 0);
+		writeInt(centralDirectory, 0);
+		writeInt(centralDirectory, zip64Offset ? ZIP64_MAGIC_SIZE : offset);
+		centralDirectory.write(nameBytes);
+		if (zip64ExtraLength > 0) {
+			writeShort(centralDirectory, ZIP64_EXTRA_FIELD_ID);
+			writeShort(centralDirectory, zip64ExtraLength);
+			if (zip64Sizes) {
+				writeLong(centralDirectory, entry.size);
+				writeLong(centralDirectory, dataLength);
+			}
+			if (zip64Offset) {
+				writeLong(centralDirectory, offset);
+			}
+		}
+		writtenEntries++;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			while (!pendingEntries.isEmpty()) {
+				write(await(pendingEntries.poll()));
+			}
+			centralDirectory.close();
+			writeCentralDirectory();
+		} finally {
+			if (executor != null) {
+				executor.shutdownNow();
+			}
+			// Entries compressed ahead of a failure are never written, release their buffers
+			for (final Future<CompressedEntry> pendingEntry : pendingEntries) {
+				discard(pendingEntry);
+			}
+			pendingEntries.clear();
+			centralDirectory.close();
+			centralDirectoryFile.delete();
+			out.close();
+		}
+	}
+
+	private static void discard(final Future<CompressedEntry> pendingEntry) {
+		if (pendingEntry.cancel(true)) {
+			return;
+		}
+		try {
+			pendingEntry.get().data.delete();
+		} catch (InterruptedException e) {
+			// Restore interrupted state, the temporary file of the entry is deleted on exit at the latest
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			// Failed entries have already released their buffers
+		}
+	}
+
+	private void writeCentralDirectory() throws IOException {
+		final long centralDirectoryOffset = out.getCount();
+		Files.copy(centralDirectoryFile.toPath(), out);
+		final long centralDirectorySize = centralDirectory.getCount();
+		final long entryCount = writtenEntries;
+		final boolean zip64 = entryCount >= ZIP64_MAGIC_COUNT || centralDirectoryOffset >= ZIP64_MAGIC_SIZE || centralDirectorySize >= ZIP64_MAGIC_SIZE;
+		if (zip64) {
+			final long zip64EndOffset = out.getCount();
+			writeInt(out, ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE);
+			// Size of the remaining record
+			writeLong(out, 44L);
+			writeShort(out, VERSION_NEEDED_ZIP64);
+			writeShort(out, VERSION_NEEDED_ZIP64);
+			writeInt(out, 0);
+			writeInt(out, 0);
+			writeLong(out, entryCount);
+			writeLong(out, entryCount);
+			writeLong(out, centralDirectorySize);
+			writeLong(out, centralDirectoryOffset);
+			writeInt(out, ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIGNATURE);
+			writeInt(out, 0);
+			writeLong(out, zip64EndOffset);
+			writeInt(out, 1);
+		}
+		writeInt(out, END_OF_CENTRAL_DIRECTORY_SIGNATURE);
+		writeShort(out, 0);
+		writeShort(out, 0);
+		writeShort(out, zip64 ? ZIP64_MAGIC_COUNT : (int) entryCount);
+		writeShort(out, zip64 ? ZIP64_MAGIC_COUNT : (int) entryCount);
+		writeInt(out, zip64 ? ZIP64_MAGIC_SIZE : centralDirectorySize);
+		writeInt(out, zip64 ? ZIP64_MAGIC_SIZE : centralDirectoryOffset);
+		writeShort(out, 0);
+	}
+
+	private static void writeShort(final OutputStream output, final int value) throws IOException {
+		output.write(value & 0xFF);
+		output.write((value >>> 8) & 0xFF);
+	}
+
+	private static void writeInt(final OutputStream output, final long value) throws IOException {
+		writeShort(output, (int) (value & 0xFFFF));
+		writeShort(output, (int) ((value >>> 16) & 0xFFFF));
+	}
+
+	private static void writeLong(final OutputStream output, final long value) throws IOException {
+		writeInt(output, value & 0xFFFFFFFFL);
+		writeInt(output, value >>> 32);
+	}
+
+	private static int toDosTime(final long time) {
+		final LocalDateTime dateTime = LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneId.systemDefault());
+		if (dateTime.getYear() < 1980) {
+			// Earliest date representable in the DOS format, 1980-01-01 00:00
+			return (1 << 21) | (1 << 16);
+		}
+		return (dateTime.getYear() - 1980) << 25 | dateTime.getMonthValue() << 21 | dateTime.getDayOfMonth() << 16
+				| dateTime.getHour() << 11 | dateTime.getMinute() << 5 | dateTime.getSecond() >> 1;
+	}
+
+	/**
+	 * Entry data ready to be written, either deflated or stored.
+	 */
+	private static final class CompressedEntry {
+		private final String name;
+		private final long time;
+		private final int method;
+		private final long crc;
+		private final long size;
+		private final SpillBuffer data;
+
+		private CompressedEntry(final String name, final long time, final int method, final long crc, final long size, final SpillBuffer data) {
+			this.name = name;
+			this.time = time;
+			this.method = method;
+			this.crc = crc;
+			this.size = size;
+			this.data = data;
+		}
+	}
+
+	/**
+	 * Output stream keeping its content in memory up to a threshold and in a temporary file beyond, to be written
+	 * once, read back any number of times and deleted afterwards.
+	 */
+	static final class SpillBuffer extends OutputStream {
+		private final int threshold;
+		private byte[] memory = new byte[0];
+		private int memoryCount;
+		private File file;
+		private OutputStream fileOutput;
+		private long size;
+
+		SpillBuffer(final int threshold) {
+			this.threshold = threshold;
+		}
+
+		@Override
+		public void write(final int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(final byte[] b, final int off, final int len) throws IOException {
+			if (fileOutput == null && memoryCount + len > threshold) {
+				spill();
+			}
+			if (fileOutput != null) {
+				fileOutput.write(b, off, len);
+			} else {
+				if (memoryCount + len > memory.length) {
+					memory = Arrays.copyOf(memory, Math.min(threshold, Math.max(memoryCount + len, memory.length * 2)));
+				}
+				System.arraycopy(b, off, memory, memoryCount, len);
+				memoryCount += len;
+			}
+			size += len;
+		}
+
+		private void spill() throws IOException {
+			file = File.createTempFile("java2bnd-entry-", ".tmp");
+			// Safety net for entries abandoned by a failed export
+			file.deleteOnExit();
+			fileOutput = new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE);
+			fileOutput.write(memory, 0, memoryCount);
+			memory = new byte[0];
+			memoryCount = 0;
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (fileOutput != null) {
+				fileOutput.close();
+			}
+		}
+
+		long size() {
+			return size;
+		}
+
+		boolean isSpilled() {
+			return file != null;
+		}
+
+		/**
+		 * Copy the content to the given stream, the buffer must have been closed before.
+		 *
+		 * @param output stream to copy the content to
+		 * @throws IOException if the spilled content cannot be read or the stream cannot be written
+		 */
+		void writeTo(final OutputStream output) throws IOException {
+			if (file == null) {
+				output.write(memory, 0, memoryCount);
+				return;
+			}
+			Files.copy(file.toPath(), output);
+		}
+
+		/**
+		 * Release the memory and delete the temporary file, if any.
+		 */
+		void delete() {
+			memory = new byte[0];
+			memoryCount = 0;
+			if (fileOutput != null) {
+				try {
+					fileOutput.close();
+				} catch (IOException e) {
+					// Ignore, the file is deleted anyway
+				}
+			}
+			if (file != null) {
+				file.delete();
+				file = null;
+			}
+		}
+	}
+
+	private static final class CountingOutputStream extends OutputStream {
+		private final OutputStream delegate;
+		private long count;
+
+		private CountingOutputStream(final OutputStream delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public void write(final int b) throws IOException {
+			delegate.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(final byte[] b, final int off, final int len) throws IOException {
+			delegate.write(b, off, len);
+			count += len;
+		}
+
+		@Override
+		public void flush() throws IOException {
+			delegate.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			delegate.close();
+		}
+
+		private long getCount() {
+			return count;
+		}
+	}
+
+}
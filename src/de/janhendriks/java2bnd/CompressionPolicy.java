@@ -0,0 +1,88 @@
+package de.janhendriks.java2bnd;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.Collection;
+import java.util.Locale;
+import java.util.zip.Deflater;
+
+/**
+ * Immutable compression policy deciding per bundle entry whether it is stored as-is or deflated, and with which level.
+ * Entries of already compressed formats (e.g. images or nested jars) and tiny entries are always stored, as deflating
+ * them costs time without reducing the bundle size.
+ */
+final class CompressionPolicy {
+
+	/**
+	 * Compression method of a bundle, {@link #STORED} disables compression for all entries.
+	 */
+	enum Method {
+		STORED, DEFLATED
+	}
+
+	private final Method method;
+	private final int level;
+	private final Collection<String> storedExtensions;
+	private final long minimumSize;
+	private final int parallelThreshold;
+
+	CompressionPolicy(final Method method, final int level, final Collection<String> storedExtensions, final long minimumSize, final int parallelThreshold) {
+		this.method = requireNonNull(method, "Compression method must not be null!");
+		if (level != Deflater.DEFAULT_COMPRESSION && (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION)) {
+			throw new IllegalArgumentException(String.format("%s must be between 0 and 9 or -1 for the default level, was %d", Settings.COMPRESSION_LEVEL, level));
+		}
+		if (minimumSize < 0) {
+			throw new IllegalArgumentException(String.format("%s must not be negative, was %d", Settings.COMPRESSION_MIN_SIZE, minimumSize));
+		}
+		if (parallelThreshold < 0) {
+			throw new IllegalArgumentException(String.format("%s must not be negative, was %d", Settings.COMPRESSION_PARALLEL_THRESHOLD, parallelThreshold));
+		}
+		this.level = level;
+		this.storedExtensions = requireNonNull(storedExtensions, "Stored extensions must not be null!");
+		this.minimumSize = minimumSize;
+		this.parallelThreshold = parallelThreshold;
+	}
+
+	/**
+	 * @return {@code true} if at least some entries may be deflated, {@code false} if everything is stored
+	 */
+	boolean isCompressing() {
+		return method == Method.DEFLATED && level != Deflater.NO_COMPRESSION;
+	}
+
+	/**
+	 * Decide whether the entry with the given name and uncompressed size is to be deflated.
+	 *
+	 * @param entryName name of the entry within the bundle
+	 * @param size uncompressed size of the entry in bytes
+	 * @return {@code true} if the entry should be deflated, {@code false} if it should be stored
+	 */
+	boolean shouldDeflate(final String entryName, final long size) {
+		if (!isCompressing() || size < minimumSize) {
+			return false;
+		}
+		final int extensionIndex = entryName.lastIndexOf('.');
+		if (extensionIndex < 0 || extensionIndex < entryName.lastIndexOf('/')) {
+			return true;
+		}
+		return !storedExtensions.contains(entryName.substring(extensionIndex + 1).toLowerCase(Locale.ROOT));
+	}
+
+	int getLevel() {
+		return level;
+	}
+
+	/**
+	 * @return number of entries from which on the entries are compressed in parallel on all available cores
+	 */
+	int getParallelThreshold() {
+		return parallelThreshold;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s[method=%s, level=%d, storedExtensions=%s, minimumSize=%d, parallelThreshold=%d]",
+				getClass().getSimpleName(), method, level, storedExtensions, minimumSize, parallelThreshold);
+	}
+
+}
@@ -0,0 +1,265 @@
+package de.janhendriks.java2bnd;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.jdt.core.IClasspathContainer;
+import org.eclipse.jdt.core.IClasspathEntry;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.JavaModelException;
+import org.osgi.framework.Constants;
+
+import aQute.bnd.service.RepositoryPlugin;
+import aQute.bnd.version.Version;
+
+/**
+ * Deploys the plain library jars referenced by the classpath of Java projects into a bnd repository.
+ * Deployment is deduplicated by content: every distinct jar is hashed only once as long as it is unchanged on disk,
+ * deployed at most once per workspace build even if many projects share it (also by asynchronous deployments running
+ * after the build), and skipped if the repository already contains the same bytes.
+ */
+final class LibraryDeployer {
+
+	// Classpath container of the JRE, its libraries are never deployed
+	private static final String JRE_CONTAINER = "org.eclipse.jdt.launching.JRE_CONTAINER";
+
+	// Content hashes of library files by their path, replaced when the size or modification time of the file changed
+	private static final Map<String, KnownHash> HASHES = new ConcurrentHashMap<>();
+	// Content hashes of libraries already reported as no bundle, so that each one is only reported once per session
+	private static final Set<String> REPORTED_NON_BUNDLES = ConcurrentHashMap.newKeySet();
+	private static final AtomicBoolean LISTENING = new AtomicBoolean();
+	// Scope of the current workspace build, replaced by a new one once the build is over
+	private static volatile WorkspaceBuildScope currentScope = new WorkspaceBuildScope();
+
+	private LibraryDeployer() {
+		throw new IllegalAccessError("Cannot instantiate " + this.getClass().getName());
+	}
+
+	/**
+	 * Collect the library jar files on the classpath of the given project, excluding the JRE and class folders.
+	 *
+	 * @param jproject Java project whose classpath to read
+	 * @param includeTests whether libraries only used by tests are collected as well
+	 * @return existing library jar files in classpath order
+	 * @throws JavaModelException if the classpath cannot be read
+	 */
+	static Collection<File> collectLibraries(final IJavaProject jproject, final boolean includeTests) throws JavaModelException {
+		requireNonNull(jproject, "Java project must not be null!");
+		final Collection<File> libraries = new LinkedHashSet<>();
+		for (final IClasspathEntry rawEntry : jproject.getRawClasspath()) {
+			if (!includeTests && rawEntry.isTest()) {
+				continue;
+			}
+			switch (rawEntry.getEntryKind()) {
+			case IClasspathEntry.CPE_LIBRARY:
+				addLibrary(libraries, rawEntry);
+				break;
+			case IClasspathEntry.CPE_VARIABLE:
+				addLibrary(libraries, JavaCore.getResolvedClasspathEntry(rawEntry));
+				break;
+			case IClasspathEntry.CPE_CONTAINER:
+				if (JRE_CONTAINER.equals(rawEntry.getPath().segment(0))) {
+					break;
+				}
+				final IClasspathContainer container = JavaCore.getClasspathContainer(rawEntry.getPath(), jproject);
+				if (container != null) {
+					for (final IClasspathEntry containerEntry : container.getClasspathEntries()) {
+						if (containerEntry.getEntryKind() == IClasspathEntry.CPE_LIBRARY && (includeTests || !containerEntry.isTest())) {
+							addLibrary(libraries, containerEntry);
+						}
+					}
+				}
+				break;
+			default:
+				// Source folders and other projects are not libraries
+				break;
+			}
+		}
+		return libraries;
+	}
+
+	private static void addLibrary(final Collection<File> libraries, final IClasspathEntry libraryEntry) {
+		if (libraryEntry == null || libraryEntry.getEntryKind() != IClasspathEntry.CPE_LIBRARY) {
+			return;
+		}
+		final IPath path = libraryEntry.getPath();
+		// Library paths are either workspace paths or absolute file system paths
+		final IResource resource = ResourcesPlugin.getWorkspace().getRoot().findMember(path);
+		final File file = resource != null && resource.getLocation() != null ? resource.getLocation().toFile() : path.toFile();
+		if (file.isFile() && file.getName().endsWith(".jar")) {
+			libraries.add(file);
+		}
+	}
+
+	/**
+	 * Get the scope of the current workspace build, to be obtained when a deployment is requested by a build. An
+	 * asynchronous deployment keeps its scope after the workspace build is over, so that deployments of the same build
+	 * still share it.
+	 *
+	 * @return scope of the current workspace build
+	 */
+	static WorkspaceBuildScope getWorkspaceBuildScope() {
+		if (LISTENING.compareAndSet(false, true)) {
+			// Start a new scope once the workspace build is over
+			ResourcesPlugin.getWorkspace().addResourceChangeListener(event -> currentScope = new WorkspaceBuildScope(), IResourceChangeEvent.POST_BUILD);
+		}
+		return currentScope;
+	}
+
+	/**
+	 * Deploy the given library jar files in one batch into the given repository, skipping libraries that are no bundles,
+	 * have already been handled within the given scope or are already present in the repository with the same content.
+	 * Each library is deployed on its own, a failing library does not prevent the deployment of the others.
+	 *
+	 * @param libraries library jar files to deploy
+	 * @param repository bnd repository to deploy the libraries to
+	 * @param scope scope of the workspace build requesting the deployment
+	 * @param logger consumer for log messages
+	 * @throws CoreException if any library cannot be read or deployed, combining the failures of all libraries
+	 */
+	static void deploy(final Collection<File> libraries, final RepositoryPlugin repository, final WorkspaceBuildScope scope, final Consumer<String> logger) throws CoreException {
+		requireNonNull(repository, "Repository must not be null!");
+		requireNonNull(scope, "Scope must not be null!");
+		final List<CoreException> failures = new ArrayList<>();
+		for (final File library : libraries) {
+			String handledKey = null;
+			try {
+				handledKey = repository.getName() + ":" + hash(library);
+				if (!scope.handled.add(handledKey)) {
+					continue;
+				}
+				final Optional<BundleIdentity> identityOpt = readBundleIdentity(library);
+				if (!identityOpt.isPresent()) {
+					if (REPORTED_NON_BUNDLES.add(hash(library))) {
+						Utils.logWarning(String.format("%s: Library %s has no %s, it is not deployed into %s", Utils.BUILDER_ID, library.getAbsolutePath(), Constants.BUNDLE_SYMBOLICNAME, repository.getName()));
+					}
+					continue;
+				}
+				if (isPresent(repository, identityOpt.get(), hash(library))) {
+					logger.accept(String.format("Library %s already present in %s", library.getAbsolutePath(), repository.getName()));
+					continue;
+				}
+				try (final InputStream libraryInputStream = new FileInputStream(library)) {
+					logger.accept(String.format("Copying library %s into %s", library.getAbsolutePath(), repository.getLocation()));
+					repository.put(libraryInputStream, null);
+				}
+			} catch (IOException e) {
+				scope.forget(handledKey);
+				failures.add(Utils.createCoreException(String.format("%s: Error accessing library file %s!", Utils.BUILDER_ID, library.getAbsolutePath()), e));
+			} catch (Exception e) {
+				scope.forget(handledKey);
+				failures.add(Utils.createCoreException(String.format("%s: Could not copy library file %s into bnd workspace repository %s!", Utils.BUILDER_ID, library.getAbsolutePath(), repository.getLocation()), e));
+			}
+		}
+		if (!failures.isEmpty()) {
+			throw Utils.createMultiCoreException(String.format("%s: %d of %d libraries could not be deployed into %s!", Utils.BUILDER_ID, failures.size(), libraries.size(), repository.getName()), failures);
+		}
+	}
+
+	private static boolean isPresent(final RepositoryPlugin repository, final BundleIdentity identity, final String hash) throws Exception {
+		if (!repository.versions(identity.bsn).contains(identity.version)) {
+			return false;
+		}
+		final File presentFile = repository.get(identity.bsn, identity.version, Collections.emptyMap());
+		return presentFile != null && presentFile.isFile() && hash.equals(hash(presentFile));
+	}
+
+	private static String hash(final File file) throws IOException {
+		final String path = file.getAbsolutePath();
+		final long length = file.length();
+		final long lastModified = file.lastModified();
+		final KnownHash knownHash = HASHES.get(path);
+		if (knownHash != null && knownHash.length == length && knownHash.lastModified == lastModified) {
+			return knownHash.hash;
+		}
+		final String hash = Utils.sha256(file);
+		HASHES.put(path, new KnownHash(length, lastModified, hash));
+		return hash;
+	}
+
+	private static Optional<BundleIdentity> readBundleIdentity(final File library) throws IOException {
+		try (final JarFile jarFile = new JarFile(library, false)) {
+			final Manifest manifest = jarFile.getManifest();
+			if (manifest == null) {
+				return Optional.empty();
+			}
+			final Attributes attributes = manifest.getMainAttributes();
+			final String bsn = attributes.getValue(Constants.BUNDLE_SYMBOLICNAME);
+			if (bsn == null) {
+				return Optional.empty();
+			}
+			final String versionValue = attributes.getValue(Constants.BUNDLE_VERSION);
+			try {
+				final Version version = versionValue != null ? new Version(versionValue.trim()) : Version.LOWEST;
+				// Strip directives such as singleton:=true from the bundle symbolic name
+				return Optional.of(new BundleIdentity(bsn.split(";")[0].trim(), version));
+			} catch (IllegalArgumentException e) {
+				return Optional.empty();
+			}
+		}
+	}
+
+	/**
+	 * Content hash of a file, valid as long as the size and modification time of the file are unchanged.
+	 */
+	private static final class KnownHash {
+		private final long length;
+		private final long lastModified;
+		private final String hash;
+
+		private KnownHash(final long length, final long lastModified, final String hash) {
+			this.length = length;
+			this.lastModified = lastModified;
+			this.hash = hash;
+		}
+	}
+
+	/**
+	 * Libraries handled during one workspace build, keyed by repository name and content hash.
+	 */
+	static final class WorkspaceBuildScope {
+		private final Set<String> handled = ConcurrentHashMap.newKeySet();
+
+		private void forget(final String handledKey) {
+			// Let the next project retry a library that failed
+			if (handledKey != null) {
+				handled.remove(handledKey);
+			}
+		}
+	}
+
+	private static final class BundleIdentity {
+		private final String bsn;
+		private final Version version;
+
+		private BundleIdentity(final String bsn, final Version version) {
+			this.bsn = bsn;
+			this.version = version;
+		}
+	}
+
+}
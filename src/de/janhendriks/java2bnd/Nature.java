@@ -21,6 +21,8 @@ public final class Nature implements IProjectNature {
 	public void configure() throws CoreException {
 		// only called once the nature has been set
 		log(String.format("%s: configure called, adding %s if not already present", Utils.CORE_PLUGIN_ID, Utils.BUILDER_NAME));
+		// Called while the description change is still being applied, so the cached classification may be outdated
+		ProjectClassification.invalidate(project);
 		if (Utils.isJavaToBndProject(project) || !Utils.isJavaProjectAndNotBndProject(project)) {
 			log(String.format("%s: configure finished, project already was setup correctly or was not a Java project or had a bnd nature assigned to it", Utils.CORE_PLUGIN_ID));
 			return;
@@ -34,11 +36,13 @@ public final class Nature implements IProjectNature {
 	public void deconfigure() throws CoreException {
 		// only called once the nature has been unset
 		log(String.format("%s: deconfigure called, removing %s if present", Utils.CORE_PLUGIN_ID, Utils.BUILDER_NAME));
+		ProjectClassification.invalidate(project);
 		if (!Utils.isJavaToBndProject(project) || !Utils.isJavaProjectAndNotBndProject(project)) {
 			log(String.format("%s: deconfigure finished, project already was setup correctly or was not a Java project or had a bnd nature assigned to it", Utils.CORE_PLUGIN_ID));
 			return;
 		}
 		Utils.removeJavaToBndBuilder(project, null);
+		WorkspaceRepository.getInstance().remove(project);
 		log(String.format("%s: deconfigure finished, resulting project builders: %s", Utils.CORE_PLUGIN_ID, Arrays.asList(project.getDescription().getBuildSpec())));
 		cleanup();
 	}
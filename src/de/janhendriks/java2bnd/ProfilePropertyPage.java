@@ -0,0 +1,82 @@
+package de.janhendriks.java2bnd;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.ProjectScope;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.widgets.Combo;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Label;
+import org.eclipse.ui.dialogs.PropertyPage;
+import org.osgi.service.prefs.BackingStoreException;
+
+/**
+ * Project property page to select the performance profile of the Java2bnd builder, e.g. {@code fast-dev} during
+ * development or {@code release} for reproducible bundles. The profile is stored in the project preferences and takes
+ * effect with the next build, a profile given as builder argument in the {@code .project} file takes precedence.
+ */
+public final class ProfilePropertyPage extends PropertyPage {
+
+	private static final String NO_PROFILE = "(none)";
+
+	private Combo profileCombo;
+
+	@Override
+	protected Control createContents(final Composite parent) {
+		final Composite composite = new Composite(parent, SWT.NONE);
+		composite.setLayout(new GridLayout(2, false));
+		final Label profileLabel = new Label(composite, SWT.NONE);
+		profileLabel.setText("Performance profile:");
+		profileCombo = new Combo(composite, SWT.DROP_DOWN | SWT.READ_ONLY);
+		profileCombo.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false));
+		final List<String> profiles = new ArrayList<>();
+		profiles.add(NO_PROFILE);
+		try {
+			profiles.addAll(Settings.getProfiles());
+		} catch (CoreException e) {
+			setErrorMessage(e.getStatus() != null ? e.getStatus().getMessage() : e.getMessage());
+		}
+		profileCombo.setItems(profiles.toArray(new String[0]));
+		final int selectedIndex = profiles.indexOf(getPreferences().get(Settings.PROFILE, ""));
+		profileCombo.select(selectedIndex != -1 ? selectedIndex : 0);
+		return composite;
+	}
+
+	@Override
+	protected void performDefaults() {
+		profileCombo.select(0);
+		super.performDefaults();
+	}
+
+	@Override
+	public boolean performOk() {
+		final IEclipsePreferences preferences = getPreferences();
+		final String profile = profileCombo.getText();
+		if (NO_PROFILE.equals(profile)) {
+			preferences.remove(Settings.PROFILE);
+		} else {
+			preferences.put(Settings.PROFILE, profile);
+		}
+		try {
+			// Persist into .settings/de.janhendriks.java2bnd.prefs of the project
+			preferences.flush();
+		} catch (BackingStoreException e) {
+			setErrorMessage(String.format("Could not store the profile: %s", e.getMessage()));
+			return false;
+		}
+		return true;
+	}
+
+	private IEclipsePreferences getPreferences() {
+		final IProject project = getElement().getAdapter(IProject.class);
+		return new ProjectScope(project).getNode(Utils.CORE_PLUGIN_ID);
+	}
+
+}
@@ -0,0 +1,154 @@
+package de.janhendriks.java2bnd;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import org.bndtools.api.BndtoolsConstants;
+import org.eclipse.core.resources.ICommand;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IProjectDescription;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.jdt.core.JavaCore;
+
+/**
+ * Cached classification of a project as Java, bnd and Java2bnd project, including whether the Java2bnd builder is
+ * ordered correctly after the Java builder.
+ * {@link IProject#getDescription()} returns a fresh copy on each call, so the classification is computed only once per
+ * project and kept until a resource change delta reports a changed description, or the project being opened, closed,
+ * added or removed. The same deltas also drop the cached {@link Settings} of the project.
+ */
+final class ProjectClassification {
+
+	private static final Map<IProject, ProjectClassification> CACHE = new ConcurrentHashMap<>();
+	private static final AtomicBoolean LISTENING = new AtomicBoolean();
+
+	private static final IResourceChangeListener INVALIDATING_LISTENER = event -> {
+		final IResourceDelta workspaceDelta = event.getDelta();
+		if (workspaceDelta == null) {
+			return;
+		}
+		for (final IResourceDelta projectDelta : workspaceDelta.getAffectedChildren()) {
+			final boolean addedOrRemoved = (projectDelta.getKind() & (IResourceDelta.ADDED | IResourceDelta.REMOVED)) != 0;
+			final boolean descriptionOrOpenStateChanged = (projectDelta.getFlags() & (IResourceDelta.DESCRIPTION | IResourceDelta.OPEN)) != 0;
+			if ((addedOrRemoved || descriptionOrOpenStateChanged) && projectDelta.getResource() instanceof IProject) {
+				invalidate((IProject) projectDelta.getResource());
+				Settings.invalidate((IProject) projectDelta.getResource());
+			}
+		}
+	};
+
+	private final boolean javaProject;
+	private final boolean bndProject;
+	private final boolean javaToBndProject;
+	private final boolean builderOrderValid;
+
+	private ProjectClassification(final boolean javaProject, final boolean bndProject, final boolean javaToBndProject, final boolean builderOrderValid) {
+		this.javaProject = javaProject;
+		this.bndProject = bndProject;
+		this.javaToBndProject = javaToBndProject;
+		this.builderOrderValid = builderOrderValid;
+	}
+
+	/**
+	 * Get the cached classification of the given project, computing it if not yet present.
+	 *
+	 * @param project project to classify
+	 * @return classification of the project
+	 */
+	static ProjectClassification of(final IProject project) {
+		requireNonNull(project, "Project must not be null!");
+		ensureListening();
+		return CACHE.computeIfAbsent(project, ProjectClassification::classify);
+	}
+
+	/**
+	 * Start listening for resource changes invalidating the cached classifications and {@link Settings}, unless already
+	 * done.
+	 */
+	static void ensureListening() {
+		if (LISTENING.compareAndSet(false, true)) {
+			ResourcesPlugin.getWorkspace().addResourceChangeListener(INVALIDATING_LISTENER, IResourceChangeEvent.POST_CHANGE);
+		}
+	}
+
+	/**
+	 * Drop the cached classification of the given project, to be called after changing the project description.
+	 *
+	 * @param project project whose classification is outdated
+	 */
+	static void invalidate(final IProject project) {
+		CACHE.remove(project);
+	}
+
+	private static ProjectClassification classify(final IProject project) {
+		try {
+			if (!project.isOpen()) {
+				return new ProjectClassification(false, false, false, true);
+			}
+			// Obtain the (copied) description only once for all checks
+			final IProjectDescription description = project.getDescription();
+			final ICommand[] commands = description != null ? description.getBuildSpec() : null;
+			if (commands == null) {
+				return new ProjectClassification(false, false, false, true);
+			}
+			final String[] builderNames = Stream.of(commands).filter(Objects::nonNull).map(ICommand::getBuilderName).toArray(String[]::new);
+			final boolean javaProject = project.hasNature(JavaCore.NATURE_ID) && indexOf(builderNames, JavaCore.BUILDER_ID) != -1;
+			final boolean bndProject = project.hasNature(BndtoolsConstants.NATURE_ID) && indexOf(builderNames, BndtoolsConstants.BUILDER_ID) != -1;
+			final boolean javaToBndProject = project.hasNature(Utils.NATURE_ID) && indexOf(builderNames, Utils.BUILDER_ID) != -1;
+			final int javaBuilderIndex = indexOf(builderNames, JavaCore.BUILDER_ID);
+			final int javaToBndBuilderIndex = indexOf(builderNames, Utils.BUILDER_ID);
+			final boolean builderOrderValid = javaBuilderIndex == -1 || javaToBndBuilderIndex == -1 || javaBuilderIndex < javaToBndBuilderIndex;
+			return new ProjectClassification(javaProject, bndProject, javaToBndProject, builderOrderValid);
+		} catch (CoreException e) {
+			// Ignore and hide this exception, consider as non-matching project
+		}
+		return new ProjectClassification(false, false, false, true);
+	}
+
+	private static int indexOf(final String[] builderNames, final String builderName) {
+		for (int i = 0; i < builderNames.length; i++) {
+			if (builderName.equals(builderNames[i])) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return {@code true} if the project has the Java nature and builder assigned
+	 */
+	boolean isJavaProject() {
+		return javaProject;
+	}
+
+	/**
+	 * @return {@code true} if the project has the bnd nature and builder assigned
+	 */
+	boolean isBndProject() {
+		return bndProject;
+	}
+
+	/**
+	 * @return {@code true} if the project has the Java2bnd nature and builder assigned
+	 */
+	boolean isJavaToBndProject() {
+		return javaToBndProject;
+	}
+
+	/**
+	 * @return {@code true} if the Java2bnd builder runs after the Java builder or one of them is missing
+	 */
+	boolean isBuilderOrderValid() {
+		return builderOrderValid;
+	}
+
+}
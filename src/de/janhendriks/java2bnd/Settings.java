@@ -0,0 +1,322 @@
+package de.janhendriks.java2bnd;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.ProjectScope;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences;
+
+/**
+ * Immutable settings of the Java to bnd builder for a single project.
+ * Each setting is resolved from the following sources, the first one defining it wins:
+ * <ol>
+ * <li>the arguments of the builder command in the {@code .project} file of the project</li>
+ * <li>the project preferences, stored in {@code .settings/de.janhendriks.java2bnd.prefs} of the project</li>
+ * <li>the performance profile selected by the {@value #PROFILE} setting, e.g. {@code fast-dev} or {@code release}</li>
+ * <li>the plugin-global defaults of the {@value Utils#BUILDER_PROPERTIES_LOCATION} file</li>
+ * </ol>
+ * Settings are parsed once per project and cached until the project preferences or builder arguments change.
+ */
+final class Settings {
+
+	static final String PROFILE = "profile";
+	static final String PROFILES = "profiles";
+	static final String BND_WORKSPACE_REPOSITORY = "bnd_workspace_repository";
+	static final String EXCLUDE_FOLDERS = "exclude_folders";
+	static final String EXCLUDE_FILES = "exclude_files";
+	static final String INCLUDE_TESTS = "include_tests";
+	static final String INCLUDE_SOURCES = "include_sources";
+	static final String COMPRESSION = "compression";
+	static final String COMPRESSION_LEVEL = "compression_level";
+	static final String COMPRESSION_STORED_EXTENSIONS = "compression_stored_extensions";
+	static final String COMPRESSION_MIN_SIZE = "compression_min_size";
+	static final String COMPRESSION_PARALLEL_THRESHOLD = "compression_parallel_threshold";
+	static final String REPRODUCIBLE = "reproducible";
+	static final String DEPLOYMENT = "deployment";
+	static final String ASYNC_DEPLOY = "async_deploy";
+	static final String SKIP_IF_UNCHANGED = "skip_if_unchanged";
+	static final String DEPLOY_LIBRARIES = "deploy_libraries";
+	static final String REPORT_METRICS = "report_metrics";
+	static final String BUNDLE_CACHE_MAX_MB = "bundle_cache_max_mb";
+
+	/**
+	 * How the bundle of a project is deployed on a full build. The project is always provided as live bundle by the
+	 * {@link WorkspaceRepository}, {@link #COPY} additionally copies the bundle into the bnd workspace repository.
+	 */
+	enum Deployment {
+		COPY, LIVE
+	}
+
+	// Plugin-global defaults, read only once
+	private static Properties defaultProperties;
+	// Parsed settings by project, see #get(IProject, Map)
+	private static final Map<IProject, Settings> CACHE = new ConcurrentHashMap<>();
+	// Preference node of each project observed to invalidate the cached settings
+	private static final Map<IProject, IEclipsePreferences> OBSERVED_NODES = new ConcurrentHashMap<>();
+
+	// Sources of the settings, in order of precedence
+	private final Map<String, String> builderArguments;
+	private final IEclipsePreferences projectPreferences;
+	private final String profile;
+	private final Properties defaults;
+
+	private final String bndWorkspaceRepositoryName;
+	// Folders to exclude from export (case-sensitive)
+	private final Collection<String> excludeFolders;
+	// Files to exclude from export (case-sensitive)
+	private final Collection<String> excludeFiles;
+	// Whether test source folders (and their separate output folders) are exported as well
+	private final boolean includeTests;
+	// Whether the Java source files are exported as well, e.g. to provide Javadoc
+	private final boolean includeSources;
+	private final CompressionPolicy compressionPolicy;
+	// Whether all entries get a fixed timestamp, so that equal inputs yield byte-identical bundles
+	private final boolean reproducible;
+	private final Deployment deployment;
+	// Whether the bundle is put into the bnd workspace repository in a background job
+	private final boolean asyncDeploy;
+	// Whether the export is skipped if the fingerprint of its inputs is unchanged since the last deployment
+	private final boolean skipIfUnchanged;
+	// Whether the library jars of the project classpath are deployed along with the project bundle
+	private final boolean deployLibraries;
+	// Whether the metrics of each build are reported in the Eclipse error log
+	private final boolean reportMetrics;
+	// Size limit of the bundle cache in bytes, 0 disables the cache
+	private final long bundleCacheMaxBytes;
+
+	private Settings(final Map<String, String> builderArguments, final IEclipsePreferences projectPreferences, final Properties defaults) throws CoreException {
+		this.builderArguments = builderArguments;
+		this.projectPreferences = projectPreferences;
+		this.defaults = defaults;
+		this.profile = resolveProfile(builderArguments, projectPreferences, defaults);
+		this.bndWorkspaceRepositoryName = getValue(BND_WORKSPACE_REPOSITORY);
+		this.excludeFolders = getList(EXCLUDE_FOLDERS);
+		this.excludeFiles = getList(EXCLUDE_FILES);
+		this.includeTests = Boolean.parseBoolean(getValue(INCLUDE_TESTS));
+		this.includeSources = Boolean.parseBoolean(getValue(INCLUDE_SOURCES));
+		this.reproducible = Boolean.parseBoolean(getValue(REPRODUCIBLE));
+		final String compression = getValue(COMPRESSION);
+		try {
+			final CompressionPolicy.Method method = CompressionPolicy.Method.valueOf(compression.toUpperCase(Locale.ROOT));
+			final int level = Integer.parseInt(getValue(COMPRESSION_LEVEL));
+			final Collection<String> storedExtensions = getList(COMPRESSION_STORED_EXTENSIONS).stream()
+					.map(extension -> extension.toLowerCase(Locale.ROOT)).collect(Collectors.toSet());
+			final long minimumSize = Long.parseLong(getValue(COMPRESSION_MIN_SIZE));
+			final int parallelThreshold = Integer.parseInt(getValue(COMPRESSION_PARALLEL_THRESHOLD));
+			this.compressionPolicy = new CompressionPolicy(method, level, Collections.unmodifiableCollection(storedExtensions), minimumSize, parallelThreshold);
+		} catch (IllegalArgumentException e) {
+			// Also covers NumberFormatException
+			throw Utils.createCoreException(String.format("Invalid compression settings: %s", e.getMessage()), e);
+		}
+		final String deploymentValue = getValue(DEPLOYMENT);
+		try {
+			this.deployment = Deployment.valueOf(deploymentValue.toUpperCase(Locale.ROOT));
+		} catch (IllegalArgumentException e) {
+			throw Utils.createCoreException(String.format("Invalid deployment setting: %s", deploymentValue), e);
+		}
+		this.asyncDeploy = Boolean.parseBoolean(getValue(ASYNC_DEPLOY));
+		this.skipIfUnchanged = Boolean.parseBoolean(getValue(SKIP_IF_UNCHANGED));
+		this.deployLibraries = Boolean.parseBoolean(getValue(DEPLOY_LIBRARIES));
+		this.reportMetrics = Boolean.parseBoolean(getValue(REPORT_METRICS));
+		try {
+			this.bundleCacheMaxBytes = Long.parseLong(getValue(BUNDLE_CACHE_MAX_MB)) * 1024L * 1024L;
+		} catch (NumberFormatException e) {
+			throw Utils.createCoreException(String.format("Invalid bundle cache setting: %s", e.getMessage()), e);
+		}
+	}
+
+	/**
+	 * Get the settings for the given project and builder arguments, parsing them only if they are not yet cached or
+	 * the project preferences or builder arguments changed in the meantime.
+	 *
+	 * @param project project to get the settings for
+	 * @param builderArguments arguments of the builder command of the project, may be {@code null}
+	 * @return settings of the project
+	 * @throws CoreException if the plugin-global defaults cannot be read or a setting is invalid
+	 */
+	static Settings get(final IProject project, final Map<String, String> builderArguments) throws CoreException {
+		requireNonNull(project, "Project must not be null!");
+		final Map<String, String> arguments = builderArguments != null ? builderArguments : Collections.emptyMap();
+		// Drops the settings of removed and closed projects
+		ProjectClassification.ensureListening();
+		final IEclipsePreferences projectPreferences = new ProjectScope(project).getNode(Utils.CORE_PLUGIN_ID);
+		if (OBSERVED_NODES.put(project, projectPreferences) != projectPreferences) {
+			// A new preference node, also after the project or its preferences have been removed and created again
+			CACHE.remove(project);
+			// Changes e.g. by the property page take effect with the next build, without restarting Eclipse
+			projectPreferences.addPreferenceChangeListener(event -> CACHE.remove(project));
+		}
+		final Settings cachedSettings = CACHE.get(project);
+		if (cachedSettings != null && cachedSettings.builderArguments.equals(arguments)) {
+			return cachedSettings;
+		}
+		final Settings settings = new Settings(Collections.unmodifiableMap(new HashMap<>(arguments)), projectPreferences, getDefaultProperties());
+		CACHE.put(project, settings);
+		return settings;
+	}
+
+	/**
+	 * Drop the cached settings of the given project, e.g. because it was closed or removed.
+	 *
+	 * @param project project whose settings are outdated
+	 */
+	static void invalidate(final IProject project) {
+		CACHE.remove(project);
+		if (!project.exists()) {
+			// The preference node is removed along with the project, including its listener
+			OBSERVED_NODES.remove(project);
+		}
+	}
+
+	/**
+	 * Get the names of the available performance profiles.
+	 *
+	 * @return profile names in definition order
+	 * @throws CoreException if the plugin-global defaults cannot be read
+	 */
+	static List<String> getProfiles() throws CoreException {
+		final String profiles = getDefaultProperties().getProperty(PROFILES, "");
+		return Arrays.stream(profiles.split(",")).map(String::trim).filter(profile -> !profile.isEmpty()).collect(Collectors.toList());
+	}
+
+	private static String resolveProfile(final Map<String, String> builderArguments, final IEclipsePreferences projectPreferences, final Properties defaults) throws CoreException {
+		String profile = builderArguments.get(PROFILE);
+		if (profile == null) {
+			profile = projectPreferences.get(PROFILE, defaults.getProperty(PROFILE, ""));
+		}
+		profile = profile.trim();
+		if (!profile.isEmpty() && !getProfiles().contains(profile)) {
+			throw Utils.createCoreException(String.format("Unknown profile '%s', available profiles are %s", profile, getProfiles()), null);
+		}
+		return profile;
+	}
+
+	private static synchronized Properties getDefaultProperties() throws CoreException {
+		if (defaultProperties != null) {
+			return defaultProperties;
+		}
+		try (	final InputStream input = Settings.class.getClassLoader().getResourceAsStream(Utils.BUILDER_PROPERTIES_LOCATION);
+				final Reader reader = new InputStreamReader(input, StandardCharsets.UTF_8)) {
+			final Properties properties = new Properties();
+			properties.load(reader);
+			defaultProperties = properties;
+			return defaultProperties;
+		} catch (IOException e) {
+			// Wrap into CoreException
+			final String message = String.format("Could not read properties file %s!", Utils.BUILDER_PROPERTIES_LOCATION);
+			throw Utils.createCoreException(message, e);
+		}
+	}
+
+	private String getValue(final String key) throws CoreException {
+		String value = builderArguments.get(key);
+		if (value == null) {
+			value = projectPreferences.get(key, null);
+		}
+		if (value == null && !profile.isEmpty()) {
+			value = defaults.getProperty(profile + "." + key);
+		}
+		if (value == null) {
+			value = defaults.getProperty(key);
+		}
+		if (value == null) {
+			// Wrap into CoreException
+			final String message = String.format("Could not read properties file %s value %s!", Utils.BUILDER_PROPERTIES_LOCATION, key);
+			throw Utils.createCoreException(message, null);
+		}
+		return value.trim();
+	}
+
+	private Collection<String> getList(final String key) throws CoreException {
+		final String value = getValue(key);
+		if (value.isEmpty()) {
+			return Collections.emptyList();
+		}
+		return Collections.unmodifiableList(Arrays.stream(value.split(",")).map(String::trim).collect(Collectors.toList()));
+	}
+
+	String getBndWorkspaceRepositoryName() {
+		return bndWorkspaceRepositoryName;
+	}
+
+	Collection<String> getExcludeFolders() {
+		return excludeFolders;
+	}
+
+	Collection<String> getExcludeFiles() {
+		return excludeFiles;
+	}
+
+	boolean isIncludeTests() {
+		return includeTests;
+	}
+
+	boolean isIncludeSources() {
+		return includeSources;
+	}
+
+	boolean isReproducible() {
+		return reproducible;
+	}
+
+	CompressionPolicy getCompressionPolicy() {
+		return compressionPolicy;
+	}
+
+	Deployment getDeployment() {
+		return deployment;
+	}
+
+	boolean isAsyncDeploy() {
+		return asyncDeploy;
+	}
+
+	boolean isSkipIfUnchanged() {
+		return skipIfUnchanged;
+	}
+
+	boolean isDeployLibraries() {
+		return deployLibraries;
+	}
+
+	boolean isReportMetrics() {
+		return reportMetrics;
+	}
+
+	long getBundleCacheMaxBytes() {
+		return bundleCacheMaxBytes;
+	}
+
+	/**
+	 * @return textual representation of all settings affecting the content of the exported bundle
+	 */
+	String getExportFingerprint() {
+		return String.format("%s|%s|%s|%s|%s|%s", excludeFolders, excludeFiles, includeTests, includeSources, compressionPolicy, reproducible);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s[profile=%s, bndWorkspaceRepository=%s, excludeFolders=%s, excludeFiles=%s, includeTests=%s, includeSources=%s, compression=%s, "
+				+ "reproducible=%s, deployment=%s, asyncDeploy=%s, skipIfUnchanged=%s, deployLibraries=%s, bundleCacheMaxBytes=%d, reportMetrics=%s]",
+				getClass().getSimpleName(), profile, bndWorkspaceRepositoryName, excludeFolders, excludeFiles, includeTests, includeSources, compressionPolicy,
+				reproducible, deployment, asyncDeploy, skipIfUnchanged, deployLibraries, bundleCacheMaxBytes, reportMetrics);
+	}
+
+}
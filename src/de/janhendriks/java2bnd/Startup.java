@@ -0,0 +1,58 @@
+package de.janhendriks.java2bnd;
+
+import java.io.File;
+import java.util.stream.Stream;
+
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.ui.IStartup;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.framework.ServiceReference;
+import org.osgi.util.tracker.ServiceTracker;
+
+import aQute.bnd.build.Workspace;
+
+/**
+ * Registers the {@link WorkspaceRepository} with the bnd workspace when the workbench starts, so that all Java2bnd
+ * projects with the {@code live} deployment are provided as live bundles right away, and not only once each project
+ * has been built again. The repository is registered with the bnd workspace instance bndtools resolves against, as soon
+ * as bndtools provides it as OSGi service.
+ */
+public final class Startup implements IStartup {
+
+	// Open for the whole session, bndtools replaces its workspace instance e.g. when the cnf project changes
+	private static ServiceTracker<Workspace, Workspace> bndWorkspaceTracker;
+
+	@Override
+	public void earlyStartup() {
+		final File bndWorkspaceDirectory;
+		try {
+			// Never reopen a cnf project the user has closed
+			bndWorkspaceDirectory = Builder.getBndWorkspaceDirectory(false);
+		} catch (CoreException e) {
+			Utils.logWarning(String.format("%s: Could not register the %s repository: %s", Utils.BUILDER_ID, WorkspaceRepository.REPOSITORY_NAME, e.getMessage()));
+			return;
+		}
+		if (bndWorkspaceDirectory == null || Stream.of(ResourcesPlugin.getWorkspace().getRoot().getProjects()).noneMatch(Utils::isJavaToBndProject)) {
+			// No bnd workspace or nothing to provide, the repository is registered with the first live build instead
+			return;
+		}
+		synchronized (Startup.class) {
+			if (bndWorkspaceTracker != null) {
+				return;
+			}
+			bndWorkspaceTracker = new ServiceTracker<Workspace, Workspace>(FrameworkUtil.getBundle(Startup.class).getBundleContext(), Workspace.class, null) {
+				@Override
+				public Workspace addingService(final ServiceReference<Workspace> reference) {
+					final Workspace bndWorkspace = super.addingService(reference);
+					if (bndWorkspace != null && Builder.isBndWorkspaceOf(bndWorkspace, bndWorkspaceDirectory)) {
+						WorkspaceRepository.register(bndWorkspace, Utils::logWarning);
+					}
+					return bndWorkspace;
+				}
+			};
+			bndWorkspaceTracker.open();
+		}
+	}
+
+}
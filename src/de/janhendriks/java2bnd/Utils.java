@@ -2,6 +2,12 @@ package de.janhendriks.java2bnd;
 
 import static java.util.Objects.requireNonNull;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
@@ -9,10 +15,11 @@ import java.util.Iterator;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.function.Predicate;
+import java.util.jar.Manifest;
 import java.util.stream.Stream;
 
-import org.bndtools.api.BndtoolsConstants;
 import org.eclipse.core.resources.ICommand;
+import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IProjectDescription;
@@ -23,6 +30,8 @@ import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.MultiStatus;
+import org.eclipse.core.runtime.Platform;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.jdt.core.IJavaModelMarker;
 import org.eclipse.jdt.core.IJavaProject;
@@ -33,6 +42,7 @@ import org.eclipse.ui.console.IConsole;
 import org.eclipse.ui.console.IConsoleManager;
 import org.eclipse.ui.console.MessageConsole;
 import org.eclipse.ui.console.MessageConsoleStream;
+import org.osgi.framework.FrameworkUtil;
 
 /**
  * Utilities class for the Java to bnd builder and nature containing static convenience methods to avoid code duplication.
@@ -47,6 +57,8 @@ abstract class Utils {
 	static final String NATURE_ID = Utils.CORE_PLUGIN_ID + ".nature";
 	static final String NATURE_NAME = "Java2bnd nature";
 
+	static final String PROBLEM_MARKER_ID = Utils.CORE_PLUGIN_ID + ".problem";
+
 	static final String BUILDER_PROPERTIES_LOCATION = "META-INF/plugin.properties";
 	static final String MANIFEST_LOCATION = "META-INF/MANIFEST.MF";
 	static final boolean DEBUG_OUTPUT = false;
@@ -59,10 +71,6 @@ abstract class Utils {
 	private static final String PROJECT_BUILDERS_NULL_ERROR = "Project builder commands must not be null!";
 	private static final String PROJECT_NATURES_NULL_ERROR = "Project natures must not be null!";
 
-	// Get from external bndtools API
-	private static final String BND_NATURE_ID = BndtoolsConstants.NATURE_ID;
-	private static final String BND_BUILDER_ID = BndtoolsConstants.BUILDER_ID;
-
 	private Utils() {
 		throw new IllegalAccessError("Cannot instantiate " + this.getClass().getName());
 	}
@@ -76,15 +84,8 @@ abstract class Utils {
 	 */
 	static final boolean isJavaProjectAndNotBndProject(final IProject project) {
 		requireNonNull(project, PROJECT_NULL_ERROR);
-		return (isJavaProject(project) && !isBndProject(project));
-	}
-
-	private static boolean isJavaProject(final IProject project) {
-		return isMatchingProject(project, JavaCore.NATURE_ID, JavaCore.BUILDER_ID);
-	}
-
-	private static boolean isBndProject(final IProject project) {
-		return isMatchingProject(project, BND_NATURE_ID, BND_BUILDER_ID);
+		final ProjectClassification classification = ProjectClassification.of(project);
+		return (classification.isJavaProject() && !classification.isBndProject());
 	}
 
 	/**
@@ -94,45 +95,23 @@ abstract class Utils {
 	 * @return {@code true} if the project has the Java2Bnd project nature and corresponding builder assigned to it, {@code false} otherwise
 	 */
 	static final boolean isJavaToBndProject(final IProject project) {
-		return isMatchingProject(project, NATURE_ID, BUILDER_ID); 
-	}
-
-	private static boolean isMatchingProject(final IProject project, final String natureId, final String builderId) {
 		requireNonNull(project, PROJECT_NULL_ERROR);
-		try {
-			final boolean givenProjectNaturePresent = project.hasNature(natureId);
-			if (!givenProjectNaturePresent) {
-				return false;
-			}
-			/* 
-			 * Check also for corresponding Java builder org.eclipse.jdt.core.javabuilder to be present
-			 * and at the same time check that the bnd builder bndtools.core.bndbuilder is not present
-			 */
-			final IProjectDescription desc = project.getDescription();
-			if (desc == null) {
-				return false;
-			}
-			final ICommand[] commands = desc.getBuildSpec();
-			if (commands == null) {
-				return false;
-			}
-			return Stream.of(commands).map(ICommand::getBuilderName).filter(Objects::nonNull).anyMatch(builderId::equals);
-		} catch (CoreException e) {
-			// Ignore and hide this exception, consider as non-matching project
-		}
-		return false;
+		return ProjectClassification.of(project).isJavaToBndProject();
 	}
 
 	/**
 	 * Checks whether this builder is configured to run <b>after</b> the Java
 	 * builder and automatically swap the builders on wrong ordering, i.e. fix this on-the-fly.
+	 * The project description is only written if the order actually needs to be fixed.
 	 * 
 	 * @param project the project which contains the builders to check
-	 * @return {@code true} if the builder order is correct, {@code false} otherwise
 	 * @exception CoreException if something goes wrong
 	 */
 	static final void checkBuilderOrdering(final IProject project, final IProgressMonitor monitor) throws CoreException {
 		requireNonNull(project, PROJECT_NULL_ERROR);
+		if (ProjectClassification.of(project).isBuilderOrderValid()) {
+			return;
+		}
 		final IProjectDescription description = project.getDescription();
 		requireNonNull(description, PROJECT_DESCRIPTION_NULL_ERROR);
 		final ICommand[] commands = description.getBuildSpec();
@@ -157,13 +136,14 @@ abstract class Utils {
 		 * only be added to a Java project (i.e. where a java builder is already
 		 * present) and only then gets added at the end
 		 */
-		if (javaToBndBuilderIndex < javaBuilderIndex) {
+		if (javaToBndBuilderIndex != -1 && javaToBndBuilderIndex < javaBuilderIndex) {
 			final ICommand javaToBndBuilder = commands[javaToBndBuilderIndex];
 			commands[javaToBndBuilderIndex] = commands[javaBuilderIndex];
 			commands[javaBuilderIndex] = javaToBndBuilder;
+			description.setBuildSpec(commands);
+			project.setDescription(description, monitor);
 		}
-		description.setBuildSpec(commands);
-		project.setDescription(description, monitor);
+		ProjectClassification.invalidate(project);
 	}
 
 	static final void addJavaToBndBuilder(final IProject project, final IProgressMonitor monitor) throws CoreException {
@@ -181,6 +161,7 @@ abstract class Utils {
 		newCommands[newCommands.length - 1] = command;
 		description.setBuildSpec(newCommands);
 		project.setDescription(description, monitor);
+		ProjectClassification.invalidate(project);
 	}
 
 	static final void addJavaToBndNature(final IProject project, final IProgressMonitor monitor) throws CoreException {
@@ -201,6 +182,7 @@ abstract class Utils {
 		}
 		description.setNatureIds(newNatures);
 		project.setDescription(description, monitor);
+		ProjectClassification.invalidate(project);
 	}
 
 	static final void removeJavaToBndBuilder(final IProject project, final IProgressMonitor monitor) throws CoreException {
@@ -213,6 +195,7 @@ abstract class Utils {
 		if (commands.length > newCommands.length) {
 			description.setBuildSpec(newCommands);
 			project.setDescription(description, monitor);
+			ProjectClassification.invalidate(project);
 		}
 	}
 
@@ -232,6 +215,7 @@ abstract class Utils {
 		}
 		description.setNatureIds(newNatures);
 		project.setDescription(description, monitor);
+		ProjectClassification.invalidate(project);
 	}
 
 	/**
@@ -249,6 +233,74 @@ abstract class Utils {
 		return Optional.ofNullable(manifestFileResource.getFullPath());
 	}
 
+	/**
+	 * Read the manifest of the project.
+	 * 
+	 * @param project project to read the MANIFEST.MF from
+	 * @return optional containing the manifest or empty optional if not found or not readable
+	 */
+	static final Optional<Manifest> readManifest(final IProject project) {
+		final IResource manifestFileResource = project.findMember(Utils.MANIFEST_LOCATION);
+		if (!(manifestFileResource instanceof IFile) || !manifestFileResource.exists()) {
+			return Optional.empty();
+		}
+		try (final InputStream manifestInputStream = ((IFile) manifestFileResource).getContents()) {
+			return Optional.of(new Manifest(manifestInputStream));
+		} catch (CoreException | IOException e) {
+			// Ignore and hide this exception, consider as missing manifest
+		}
+		return Optional.empty();
+	}
+
+	/**
+	 * Get the state location of this plugin in the Eclipse workspace metadata, to store e.g. cached bundles.
+	 * 
+	 * @return plugin state location
+	 */
+	static final java.nio.file.Path getStateLocation() {
+		return Platform.getStateLocation(FrameworkUtil.getBundle(Utils.class)).toFile().toPath();
+	}
+
+	/**
+	 * Compute the SHA-256 hash of the content of the given file.
+	 * 
+	 * @param file file to hash
+	 * @return lower-case hexadecimal SHA-256 hash
+	 * @throws IOException if the file cannot be read
+	 */
+	static final String sha256(final File file) throws IOException {
+		final MessageDigest digest = newSha256Digest();
+		try (final InputStream input = new FileInputStream(file)) {
+			updateDigest(digest, input);
+		}
+		return toHex(digest.digest());
+	}
+
+	static final MessageDigest newSha256Digest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			// Every Java platform is required to support SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	static final void updateDigest(final MessageDigest digest, final InputStream input) throws IOException {
+		final byte[] buffer = new byte[64 * 1024];
+		int length;
+		while ((length = input.read(buffer)) != -1) {
+			digest.update(buffer, 0, length);
+		}
+	}
+
+	static final String toHex(final byte[] bytes) {
+		final StringBuilder hex = new StringBuilder(bytes.length * 2);
+		for (final byte b : bytes) {
+			hex.append(String.format("%02x", b));
+		}
+		return hex.toString();
+	}
+
 	/**
 	 * Extract Java projects out of selected objects (filter for type {@link IJavaProject}).
 	 * 
@@ -292,6 +344,39 @@ abstract class Utils {
 		return new CoreException(new Status(IStatus.ERROR, BUILDER_ID, INTERNAL_ERROR, message, exception));
 	}
 
+	/**
+	 * Creates a <code>CoreException</code> combining the given exceptions into one multi-status.
+	 *
+	 * @param message a string with the message
+	 * @param exceptions the exceptions to combine
+	 * @return a CoreException
+	 */
+	static final CoreException createMultiCoreException(final String message, final Collection<CoreException> exceptions) {
+		final MultiStatus status = new MultiStatus(BUILDER_ID, INTERNAL_ERROR, message != null ? message : "", null); //$NON-NLS-1$
+		for (final CoreException exception : exceptions) {
+			status.add(exception.getStatus());
+		}
+		return new CoreException(status);
+	}
+
+	/**
+	 * Log an information into the Eclipse error log, independently of the debug output to the console.
+	 *
+	 * @param message the information message
+	 */
+	static final void logInfo(final String message) {
+		Platform.getLog(FrameworkUtil.getBundle(Utils.class)).log(new Status(IStatus.INFO, BUILDER_ID, message));
+	}
+
+	/**
+	 * Log a warning into the Eclipse error log, independently of the debug output to the console.
+	 *
+	 * @param message the warning message
+	 */
+	static final void logWarning(final String message) {
+		Platform.getLog(FrameworkUtil.getBundle(Utils.class)).log(new Status(IStatus.WARNING, BUILDER_ID, message));
+	}
+
 	static final MessageConsoleStream getStreamForLoggingToEclipseConsole(final String consoleName) {
 		final MessageConsole console = findOrCreateConsole(consoleName);
 		ConsolePlugin.getDefault().getConsoleManager().addConsoles(new IConsole[] { console });
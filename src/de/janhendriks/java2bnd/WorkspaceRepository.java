@@ -0,0 +1,359 @@
+package de.janhendriks.java2bnd;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.eclipse.core.resources.ICommand;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IProjectDescription;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.osgi.framework.Constants;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Requirement;
+import org.osgi.resource.Resource;
+
+import aQute.bnd.build.Workspace;
+import aQute.bnd.osgi.Domain;
+import aQute.bnd.osgi.repository.BaseRepository;
+import aQute.bnd.osgi.repository.ResourcesRepository;
+import aQute.bnd.osgi.resource.ResourceBuilder;
+import aQute.bnd.service.RepositoryPlugin;
+import aQute.bnd.version.Version;
+import aQute.libg.glob.Glob;
+
+/**
+ * Read-only bnd repository exposing all Java2bnd projects of the Eclipse workspace with the {@code live} deployment as
+ * live bundles, without packaging or copying them into another repository on each build.
+ * Listing, versions and the OSGi {@link org.osgi.service.repository.Repository} capabilities used by the resolver are
+ * answered from the project manifests only; the jar file of a project is exported lazily when a consumer actually
+ * requests the file (e.g. for {@code -runbundles} or a {@code -buildpath}). The file keeps its path in the plugin state
+ * location and is replaced atomically with the first request after the project changed.
+ */
+final class WorkspaceRepository extends BaseRepository implements RepositoryPlugin {
+
+	/**
+	 * Name under which the repository is listed in the bnd workspace, it can be referenced e.g. in {@code -runrepos}
+	 */
+	static final String REPOSITORY_NAME = "Java2bnd";
+
+	private static final String CACHE_FOLDER = "live-bundles";
+	private static final WorkspaceRepository INSTANCE = new WorkspaceRepository();
+
+	private final Map<IProject, LiveBundle> bundles = new ConcurrentHashMap<>();
+	private final AtomicBoolean listening = new AtomicBoolean();
+
+	// Drops deleted and closed projects, and provides reopened projects again without waiting for their next build
+	private final IResourceChangeListener projectListener = event -> {
+		final IResourceDelta workspaceDelta = event.getDelta();
+		if (workspaceDelta == null) {
+			return;
+		}
+		for (final IResourceDelta projectDelta : workspaceDelta.getAffectedChildren()) {
+			if (!(projectDelta.getResource() instanceof IProject)) {
+				continue;
+			}
+			final IProject project = (IProject) projectDelta.getResource();
+			final boolean removed = projectDelta.getKind() == IResourceDelta.REMOVED;
+			final boolean openStateChanged = (projectDelta.getFlags() & IResourceDelta.OPEN) != 0;
+			if (!removed && !openStateChanged) {
+				continue;
+			}
+			// Listeners are notified in no particular order, so do not rely on the classification being up to date
+			ProjectClassification.invalidate(project);
+			if (removed || !project.isOpen()) {
+				remove(project);
+			} else if (Utils.isJavaToBndProject(project)) {
+				refresh(project, Utils::logWarning);
+			}
+		}
+	};
+
+	private WorkspaceRepository() {
+		// Singleton
+	}
+
+	static WorkspaceRepository getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Add this repository to the given bnd workspace, unless it is already present. When added, the repository is
+	 * populated from all open Java2bnd projects with the {@code live} deployment, so that it is complete right after a restart and not only once each
+	 * project has been built again.
+	 *
+	 * @param bndWorkspace bnd workspace to register the repository with
+	 * @param logger logger for projects that cannot be provided as live bundle
+	 */
+	static void register(final Workspace bndWorkspace, final Consumer<String> logger) {
+		requireNonNull(bndWorkspace, "bnd workspace must not be null!");
+		requireNonNull(logger, "Logger must not be null!");
+		synchronized (INSTANCE) {
+			if (bndWorkspace.getPlugins(RepositoryPlugin.class).contains(INSTANCE)) {
+				return;
+			}
+			if (INSTANCE.listening.compareAndSet(false, true)) {
+				ResourcesPlugin.getWorkspace().addResourceChangeListener(INSTANCE.projectListener, IResourceChangeEvent.POST_CHANGE);
+			}
+			for (final IProject project : ResourcesPlugin.getWorkspace().getRoot().getProjects()) {
+				if (project.isOpen() && Utils.isJavaToBndProject(project)) {
+					INSTANCE.refresh(project, logger);
+				}
+			}
+			bndWorkspace.addBasicPlugin(INSTANCE);
+		}
+	}
+
+	/**
+	 * Make the bundle of the given project available in its current state, as described by its manifest. A previously
+	 * materialised jar file of the project keeps its path and is only replaced on the next request, unless the bundle
+	 * symbolic name or version changed.
+	 *
+	 * @param exporter exporter of the project, used to materialise the jar file on demand
+	 * @param logger logger for a project that cannot be provided as live bundle
+	 */
+	void update(final BundleExporter exporter, final Consumer<String> logger) {
+		requireNonNull(exporter, "Exporter must not be null!");
+		final IProject project = exporter.getProject();
+		final Optional<Manifest> manifestOpt = Utils.readManifest(project);
+		final String bsn = manifestOpt.map(manifest -> manifest.getMainAttributes().getValue(Constants.BUNDLE_SYMBOLICNAME)).orElse(null);
+		if (bsn == null) {
+			logger.accept(String.format("%s project %s: no %s in %s, not provided as live bundle", Utils.BUILDER_ID, project.getName(), Constants.BUNDLE_SYMBOLICNAME, Utils.MANIFEST_LOCATION));
+			remove(project);
+			return;
+		}
+		final String versionValue = manifestOpt.get().getMainAttributes().getValue(Constants.BUNDLE_VERSION);
+		final Version version;
+		try {
+			version = versionValue != null ? new Version(versionValue.trim()) : Version.LOWEST;
+		} catch (IllegalArgumentException e) {
+			logger.accept(String.format("%s project %s: invalid %s '%s', not provided as live bundle", Utils.BUILDER_ID, project.getName(), Constants.BUNDLE_VERSION, versionValue));
+			remove(project);
+			return;
+		}
+		final Resource resource = toResource(manifestOpt.get(), project, logger);
+		// Strip directives such as singleton:=true from the bundle symbolic name
+		final String symbolicName = bsn.split(";")[0].trim();
+		bundles.compute(project, (key, previous) -> {
+			if (previous != null && previous.bsn.equals(symbolicName) && previous.version.equals(version)) {
+				previous.modified(exporter, resource);
+				return previous;
+			}
+			if (previous != null) {
+				// The file name of the previous bundle does not exist in the repository anymore
+				previous.delete();
+			}
+			return new LiveBundle(exporter, symbolicName, version, resource);
+		});
+	}
+
+	/**
+	 * Remove the bundle of the given project including its materialised jar file, e.g. because the project was
+	 * deleted or closed or is no Java2bnd project anymore.
+	 *
+	 * @param project project to remove
+	 */
+	void remove(final IProject project) {
+		final LiveBundle previous = bundles.remove(project);
+		if (previous != null) {
+			previous.delete();
+		}
+	}
+
+	private void refresh(final IProject project, final Consumer<String> logger) {
+		try {
+			final Settings settings = Settings.get(project, getBuilderArguments(project));
+			if (settings.getDeployment() != Settings.Deployment.LIVE) {
+				// Provided by the bnd workspace repository the project is copied into
+				remove(project);
+				return;
+			}
+			update(new BundleExporter(project, settings, logger), logger);
+		} catch (CoreException e) {
+			logger.accept(String.format("%s project %s: could not be provided as live bundle: %s", Utils.BUILDER_ID, project.getName(), e.getMessage()));
+		}
+	}
+
+	private static Map<String, String> getBuilderArguments(final IProject project) throws CoreException {
+		final IProjectDescription description = project.getDescription();
+		final ICommand[] commands = description != null ? description.getBuildSpec() : null;
+		if (commands == null) {
+			return Collections.emptyMap();
+		}
+		return Stream.of(commands).filter(Objects::nonNull).filter(command -> Utils.BUILDER_ID.equals(command.getBuilderName()))
+				.map(ICommand::getArguments).filter(Objects::nonNull).findFirst().orElse(Collections.emptyMap());
+	}
+
+	private static Resource toResource(final Manifest manifest, final IProject project, final Consumer<String> logger) {
+		try {
+			final ResourceBuilder resourceBuilder = new ResourceBuilder();
+			resourceBuilder.addManifest(Domain.domain(manifest));
+			return resourceBuilder.build();
+		} catch (Exception e) {
+			// Still listed and available by name, just not found by the resolver
+			logger.accept(String.format("%s project %s: capabilities of %s could not be read: %s", Utils.BUILDER_ID, project.getName(), Utils.MANIFEST_LOCATION, e.getMessage()));
+			return null;
+		}
+	}
+
+	@Override
+	public Map<Requirement, Collection<Capability>> findProviders(final Collection<? extends Requirement> requirements) {
+		final List<Resource> resources = bundles.values().stream().map(bundle -> bundle.resource).filter(Objects::nonNull).collect(Collectors.toList());
+		return new ResourcesRepository(resources).findProviders(requirements);
+	}
+
+	@Override
+	public PutResult put(final InputStream stream, final PutOptions options) throws Exception {
+		throw new IllegalStateException(String.format("%s repository is read-only", REPOSITORY_NAME));
+	}
+
+	@Override
+	public File get(final String bsn, final Version version, final Map<String, String> properties, final DownloadListener... listeners) throws Exception {
+		final Optional<LiveBundle> bundleOpt = bundles.values().stream()
+				.filter(bundle -> bundle.bsn.equals(bsn))
+				.filter(bundle -> version == null || bundle.version.equals(version))
+				.max((first, second) -> first.version.compareTo(second.version));
+		if (!bundleOpt.isPresent()) {
+			return null;
+		}
+		final File file = bundleOpt.get().materialise();
+		if (file == null) {
+			for (final DownloadListener listener : listeners) {
+				listener.failure(null, String.format("Project of bundle %s could not be exported", bsn));
+			}
+			return null;
+		}
+		for (final DownloadListener listener : listeners) {
+			listener.success(file);
+		}
+		return file;
+	}
+
+	@Override
+	public boolean canWrite() {
+		return false;
+	}
+
+	@Override
+	public List<String> list(final String pattern) throws Exception {
+		final Glob glob = pattern != null ? new Glob(pattern) : null;
+		return bundles.values().stream().map(bundle -> bundle.bsn)
+				.filter(bsn -> glob == null || glob.matches(bsn))
+				.distinct().sorted().collect(Collectors.toCollection(ArrayList::new));
+	}
+
+	@Override
+	public SortedSet<Version> versions(final String bsn) throws Exception {
+		final Collection<Version> versions = bundles.values().stream().filter(bundle -> bundle.bsn.equals(bsn))
+				.map(bundle -> bundle.version).collect(Collectors.toList());
+		return new TreeSet<>(versions);
+	}
+
+	@Override
+	public String getName() {
+		return REPOSITORY_NAME;
+	}
+
+	@Override
+	public String getLocation() {
+		return Utils.getStateLocation().resolve(CACHE_FOLDER).toString();
+	}
+
+	@Override
+	public String toString() {
+		return getName();
+	}
+
+	/**
+	 * Bundle of a single project, its jar file is only exported on request and kept until the project changed.
+	 */
+	private static final class LiveBundle {
+		private final IProject project;
+		private final String bsn;
+		private final Version version;
+		private volatile BundleExporter exporter;
+		private volatile Resource resource;
+		// Counts the changes of the project, so that a change during an export is never lost
+		private final AtomicLong modifications = new AtomicLong();
+		// Modification count of the project at the time of the last export, guarded by this
+		private long exportedModifications = -1L;
+
+		private LiveBundle(final BundleExporter exporter, final String bsn, final Version version, final Resource resource) {
+			this.exporter = requireNonNull(exporter, "Exporter must not be null!");
+			this.project = exporter.getProject();
+			this.bsn = requireNonNull(bsn, "Bundle symbolic name must not be null!");
+			this.version = requireNonNull(version, "Bundle version must not be null!");
+			this.resource = resource;
+		}
+
+		private void modified(final BundleExporter currentExporter, final Resource currentResource) {
+			this.exporter = currentExporter;
+			this.resource = currentResource;
+			modifications.incrementAndGet();
+		}
+
+		/**
+		 * Stable location of the jar file, one folder per project so that equally named bundles never collide.
+		 */
+		private File getFile() {
+			return Utils.getStateLocation().resolve(CACHE_FOLDER).resolve(project.getName()).resolve(String.format("%s-%s.jar", bsn, version)).toFile();
+		}
+
+		private synchronized File materialise() throws CoreException, IOException {
+			final long currentModifications = modifications.get();
+			final File file = getFile();
+			if (exportedModifications == currentModifications && file.isFile()) {
+				return file;
+			}
+			final Optional<File> exportedFileOpt = exporter.export(null, null);
+			if (!exportedFileOpt.isPresent()) {
+				return null;
+			}
+			Files.createDirectories(file.getParentFile().toPath());
+			// Replace atomically, the path may be referenced by a buildpath that is read at the same time
+			final File siblingFile = new File(file.getParentFile(), file.getName() + ".tmp");
+			Files.move(exportedFileOpt.get().toPath(), siblingFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			try {
+				Files.move(siblingFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(siblingFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			exportedModifications = currentModifications;
+			return file;
+		}
+
+		private synchronized void delete() {
+			exportedModifications = -1L;
+			final File file = getFile();
+			file.delete();
+			// Only succeeds once the last bundle of the project is gone
+			file.getParentFile().delete();
+		}
+	}
+
+}